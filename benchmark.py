@@ -11,6 +11,9 @@ APPDIR = 'applications'
 OUTPUTPATH = 'output'
 PRINT = False
 EMPTYCONTEXT = False
+SOLVERCHECK = False
+ROARING = False
+SNAPSHOT = False
 OPTIONS = (
 	'-timeout='+str(TIMEOUT),
 	)
@@ -84,6 +87,9 @@ OPTIONMESSAGE = 'The valid OPTIONs are:\n'\
 	+ option('-print', 'print the analyses results on screen.')\
 	+ option('-clean', 'remove previous outputs.')\
 	+ option('-emptycontext', 'use empty context for static calls, or virtualised context (in "Precision-Preserving Acceleration of Object-Sensitive Pointer Analysis with CFL-Reachability") as default')\
+	+ option('-roaring', 'use compressed bitmap points-to sets; outputs get a _roaring suffix so that time and memory can be compared with the default hybrid sets.')\
+	+ option('-snapshot', 'share a snapshot of the Jimple bodies of each benchmark between analyses, kept in the snapshots folder of the output path (not with reflection logs).')\
+	+ option('-solvercheck', 'run each analysis with the sequential and the parallel solver and check that their results agree.')\
 	+ option('<PTA>', 'specify pointer analysis.')\
 	+ option('<Benchmark>', 'specify benchmark.')\
 	+ option('-all', 'run all analyses for specified benchmark(s) if ONLY benchmark(s) is specified;\n\
@@ -94,6 +100,12 @@ def getPTACommand(analysis, bm):
 	cmd = sys.executable+' pta.py ' + ' '.join(OPTIONS) + ' -pta=' + analysis
 	if EMPTYCONTEXT:
 		cmd += ' -sctx=empty'
+	if SOLVERCHECK:
+		cmd += ' -solver=check'
+	if ROARING:
+		cmd += ' -ptsimpl=roaring'
+	if SNAPSHOT:
+		cmd += ' -scenesnap ' + os.path.join(OUTPUTPATH, 'snapshots')
 	if bm in DACAPO:
 		cmd += ' -apppath ' + os.path.join(BENCHMARKPATH, DACAPODIR, bm + '.jar') \
 			+ ' -mainclass dacapo.%s.Main'%bm \
@@ -106,7 +118,7 @@ def getPTACommand(analysis, bm):
 	return cmd
 
 def runPTA(analysis, bm):
-	outputFile = os.path.join(OUTPUTPATH, bm + '_'+analysis + '.o')
+	outputFile = os.path.join(OUTPUTPATH, bm + '_'+analysis + ('_roaring' if ROARING else '') + '.o')
 	
 	cmd = getPTACommand(analysis, bm)
 	if not PRINT:
@@ -137,6 +149,12 @@ if __name__ == '__main__':
 	if "-emptycontext" in sys.argv:
 		EMPTYCONTEXT = True
 		UNSCALABLE = UNSCALABLE_EMPTY
+	if "-solvercheck" in sys.argv:
+		SOLVERCHECK = True
+	if "-roaring" in sys.argv:
+		ROARING = True
+	if "-snapshot" in sys.argv:
+		SNAPSHOT = True
 	
 	analyses=[]
 	benchmarks=[]
@@ -65,12 +65,20 @@ public class Config {
 		}
 		setSootOptions();
 		setSootClassPath();
+		// classes loaded from a snapshot have no line numbers, which the reflection log needs
+		SceneSnapshot snapshot = PTAOptions.sceneSnapshot == null || PTAOptions.REFLECTION_LOG != null ? null
+				: new SceneSnapshot(PTAOptions.sceneSnapshot);
+		boolean restored = snapshot != null && snapshot.restore();
 		appClasseNames = setAppClassesNames();
 		loadNecessaryClasses();
+		if (restored)
+			logger.info("Loaded {} classes from the scene snapshot {}.", snapshot.useBodies(), snapshot);
 		appClasses = Scene.v().getApplicationClasses().stream().collect(Collectors.toSet());
 		
 		if (sparkOpts.pre_jimplify())
 			preJimplify();
+		if (snapshot != null && !restored)
+			logger.info("Wrote {} classes to the scene snapshot {}.", snapshot.write(), snapshot);
 	}
 	
 	private static void preJimplify() {
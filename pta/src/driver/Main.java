@@ -1,9 +1,12 @@
 package driver;
 
+import java.util.List;
+
 import pta.ContextSensPTA;
 import pta.PTA;
 import pta.EagleObjectSensPTA;
 import pta.ParamObjectSensPTA;
+import util.PTASnapshot;
 
 public class Main {
 	public static void main(String[] args){
@@ -16,13 +19,48 @@ public class Main {
 			return;
 		}
 		
-		PTA pta = PTAOptions.ptaPattern.isInsensitive()?new PTA():
+		if (PTAOptions.solver == PTAOptions.CHECK) {
+			checkSolvers();
+			return;
+		}
+		
+		PTA pta = createPTA();
+
+		pta.run();
+
+		System.out.println(pta.evaluator());
+	}
+	
+	private static PTA createPTA() {
+		return PTAOptions.ptaPattern.isInsensitive()?new PTA():
 			PTAOptions.ptaPattern.isEagle()?new EagleObjectSensPTA(PTAOptions.ptaPattern.getContextDepth()):
 			PTAOptions.ptaPattern.isParam()?new ParamObjectSensPTA(PTAOptions.ptaPattern.getContextDepth()):
 			new ContextSensPTA(PTAOptions.ptaPattern.getContextDepth(), PTAOptions.ptaPattern.getHeapContextDepth());
-
+	}
+	
+	/** Run the analysis with the sequential and the parallel solver and compare their results. */
+	private static void checkSolvers() {
+		if (PTAOptions.ptaPattern.isParamPTSSens())
+			throw new RuntimeException("The solver check does not support parampts contexts, which depend on the propagation order.");
+		PTAOptions.solver = PTAOptions.SEQUENTIAL;
+		PTA pta = createPTA();
+		pta.run();
+		System.out.println(pta.evaluator());
+		PTASnapshot expected = new PTASnapshot(pta);
+		
+		PTAOptions.solver = PTAOptions.PARALLEL;
+		pta = createPTA();
 		pta.run();
-
 		System.out.println(pta.evaluator());
+		PTASnapshot actual = new PTASnapshot(pta);
+		PTAOptions.solver = PTAOptions.CHECK;
+		
+		List<String> diffs = expected.diff(actual);
+		if (diffs.isEmpty())
+			System.out.println("Solver check passed: sequential and parallel solvers agree.");
+		else {
+			System.out.println("Solver check FAILED: " + diffs.size() + " differences.");
+			diffs.forEach(System.out::println);
+		}
 	}
 }
@@ -50,6 +50,30 @@ public class PTAOptions extends org.apache.commons.cli.Options {
 	/** handle static invocation */
 	public static final int CALLER = 0, EMPTY = 1, THIS = 2;
 	public static int staticcontext = THIS;
+	/** propagation solver; CHECK runs both and compares their results */
+	public static final int SEQUENTIAL = 0, PARALLEL = 1, CHECK = 2;
+	public static int solver = SEQUENTIAL;
+	/** number of worker threads of the parallel solver */
+	public static int threads = Runtime.getRuntime().availableProcessors();
+	/** detect simple-edge cycles during solving and merge their nodes */
+	public static boolean collapseCycles = false;
+	/** points-to set implementation */
+	public static final int HYBRID = 0, ROARING = 1;
+	public static int ptsImpl = HYBRID;
+	/** share equal old points-to sets between nodes once solving is done, copying them should they grow */
+	public static boolean shareSets = false;
+	/** directory of cached pre-analysis selections; null disables the cache */
+	public static String selectionCache = null;
+	/** maximal number of contexts per method, further contexts are merged into one; 0 is unlimited */
+	public static int contextBudget = 0;
+	/** dispatch all new call sites of a solver step before building the call graph once */
+	public static boolean batchCallGraph = false;
+	/** build the PAGs of newly reachable methods on a pool of worker threads */
+	public static boolean parallelPAG = false;
+	/** directory of cached PAG fragments of library methods; null disables the cache */
+	public static String pagCache = null;
+	/** directory of Jimple snapshots of the resolved Scene; null disables them */
+	public static String sceneSnapshot = null;
 	
 	//=========PATH settings====================
 	/**
@@ -117,6 +141,17 @@ public class PTAOptions extends org.apache.commons.cli.Options {
 		EXCLUDE = null;
 		INCLUDE_ALL = false;
 		stringConstants = false;
+		solver = SEQUENTIAL;
+		threads = Runtime.getRuntime().availableProcessors();
+		collapseCycles = false;
+		ptsImpl = HYBRID;
+		shareSets = false;
+		selectionCache = null;
+		contextBudget = 0;
+		batchCallGraph = false;
+		parallelPAG = false;
+		pagCache = null;
+		sceneSnapshot = null;
 		dumpJimple = false;
 		dumppts = false;
 		dumplibpts = false;
@@ -131,6 +166,17 @@ public class PTAOptions extends org.apache.commons.cli.Options {
 		addOption("singleentry", "singleentry", "se", "A lightweight mode with only one main method entry. (default value: false)");
 		addOption(null, "clinitmode", "clinit", "full/onfly; 0/1","clinit mode. (default value: onfly)");
 		addOption(null, "staticcontext", "sctx", "caller/empty/this; 0/1/2","handle static calls. (default value: this)");
+		addOption(null, "solver", null, "seq/par/check; 0/1/2","Worklist solver: sequential, parallel, or run both and check that they agree (not with parampts contexts, which depend on the propagation order). (default value: seq)");
+		addOption("threads", "threads", null, "n","Number of worker threads of the parallel solver and PAG construction. (default value: number of processors)");
+		addOption("collapseCycles", "collapsecycles", "cc", "Merge nodes on simple-edge cycles found during solving. (default value: false)");
+		addOption("shareSets", "sharesets", "ss", "Share equal points-to sets of different nodes once solving is done, and copy them should they grow. (default value: false)");
+		addOption("selectionCache", "selcache", null, "dir", "Cache the context selection of selective analyses in dir, keyed by the classpath and options, and reuse it in later runs. (default value: no cache)");
+		addOption("contextBudget", "contextbudget", "ctxbudget", "n", "Cap the number of contexts per method at n and merge further contexts into one summary context, reporting the capped methods. (default value: 0, unlimited)");
+		addOption("batchCallGraph", "batchcg", null, "Dispatch all call sites found in a solver step before building the call graph once, instead of building it after each site. (default value: false)");
+		addOption("parallelPAG", "parpag", null, "Build the PAGs of newly reachable methods in parallel; node numbers then vary between runs. (default value: false)");
+		addOption("pagCache", "pagcache", null, "dir", "Cache the statement edges of library methods in dir, keyed by class file contents, and reuse them in later runs. (default value: no cache)");
+		addOption("sceneSnapshot", "scenesnap", null, "dir", "Snapshot the Jimple bodies of the resolved classes in dir, keyed by the classpath contents, and load later runs from it instead of bytecode. Ignored with a reflection log. (default value: no snapshot)");
+		addOption(null, "ptsimpl", null, "hybrid/roaring; 0/1","Points-to set implementation: small arrays and flat bit vectors, or compressed bitmaps (experimental: not yet compared on DaCapo). (default value: hybrid)");
 		
 		addOption("APP_PATH", "apppath", "app", "dir or jar","The directory containing the classes for the application or the application jar file (default: .)");
 		addOption("MAIN_CLASS", "mainclass", "main", "class name", "Name of the main class for the application (must be specified when appmode)");
@@ -248,6 +294,28 @@ public class PTAOptions extends org.apache.commons.cli.Options {
 				throw new RuntimeException("Wrong argument for clinit mode!");
 		}
 		
+		if(cmd.hasOption("solver")){
+			String sv = cmd.getOptionValue("solver");
+			if(sv.equalsIgnoreCase("seq")|| sv.equalsIgnoreCase(Integer.valueOf(SEQUENTIAL).toString()))
+				solver = SEQUENTIAL;
+			else if(sv.equalsIgnoreCase("par")|| sv.equalsIgnoreCase(Integer.valueOf(PARALLEL).toString()))
+				solver = PARALLEL;
+			else if(sv.equalsIgnoreCase("check")|| sv.equalsIgnoreCase(Integer.valueOf(CHECK).toString()))
+				solver = CHECK;
+			else
+				throw new RuntimeException("Wrong argument for solver!");
+		}
+		
+		if(cmd.hasOption("ptsimpl")){
+			String pi = cmd.getOptionValue("ptsimpl");
+			if(pi.equalsIgnoreCase("hybrid")|| pi.equalsIgnoreCase(Integer.valueOf(HYBRID).toString()))
+				ptsImpl = HYBRID;
+			else if(pi.equalsIgnoreCase("roaring")|| pi.equalsIgnoreCase(Integer.valueOf(ROARING).toString()))
+				ptsImpl = ROARING;
+			else
+				throw new RuntimeException("Wrong argument for points-to set implementation!");
+		}
+		
 		G.v().out = cmd.hasOption("verbose")?System.out:new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM);
 	}
 
@@ -6,7 +6,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class PTAPattern {
-	enum ContextKind{INSENS,CALLSITE,OBJECT,TYPE,PARAM}
+	enum ContextKind{INSENS,CALLSITE,OBJECT,TYPE,PARAM,PARAMPTS}
 	enum Approach{NONE,EAGLE,PARAM}
 	
 	static Map<String, ContextKind> contextKinds = new HashMap<>();
@@ -18,6 +18,7 @@ public class PTAPattern {
 		add(contextKinds, ContextKind.OBJECT,"object", "obj", "o");
 		add(contextKinds, ContextKind.TYPE,"type", "t");
 		add(contextKinds, ContextKind.PARAM,"param","p");
+		add(contextKinds, ContextKind.PARAMPTS,"parampts","ppts");
 
 		add(approaches, Approach.EAGLE,"eagle", "e");
 		add(approaches,Approach.PARAM,"param","p");
@@ -55,6 +56,10 @@ public class PTAPattern {
 	public boolean isParamSens(){
 		return ContextKind.PARAM==type;
 	}
+	/** parameter sensitivity on the points-to sets of the arguments */
+	public boolean isParamPTSSens(){
+		return ContextKind.PARAMPTS==type;
+	}
 	//main中选择eagle还是param
 	public boolean isEagle(){
 		return Approach.EAGLE==approach;
@@ -128,6 +133,9 @@ public class PTAPattern {
 		case TYPE:
 			stringBuilder.append("type");
 			break;
+		case PARAMPTS:
+			stringBuilder.append("parampts");
+			break;
 		default:
 			break;
 		}
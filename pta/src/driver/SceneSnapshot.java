@@ -0,0 +1,263 @@
+package driver;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+
+import soot.Body;
+import soot.MethodSource;
+import soot.Printer;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.jimple.JimpleMethodSource;
+import soot.jimple.parser.JimpleAST;
+import soot.jimple.parser.lexer.LexerException;
+import soot.jimple.parser.parser.ParserException;
+import soot.options.Options;
+
+/**
+ * Snapshot of the Jimple bodies of a resolved Scene, so that later runs on the
+ * same inputs load Jimple instead of parsing and jimplifying bytecode again.
+ * The snapshot is a jar holding one .jimple file per class, named after a hash
+ * of the contents of all classpath entries and of the options that change the
+ * bodies. A run that finds it puts it in front of the soot classpath and lets
+ * Jimple take precedence over class files; classes missing from it are still
+ * loaded from bytecode. The bodies of the stored classes are read as they are,
+ * without running the jb pack over them again as the Jimple front end does.
+ *
+ * Only classes whose methods all have bodies are stored. Tags, e.g. line
+ * numbers, are not part of Jimple text and are lost on classes loaded from
+ * the snapshot. The reflection log refers to call sites by line number, so
+ * Config does not use snapshots together with a reflection log.
+ *
+ * The Jimple parser of soot reads with the platform charset, both when it
+ * resolves a class and in {@link SnapshotBodies}, so the snapshot is written
+ * in that charset too; classes whose Jimple cannot be encoded in it are left
+ * out.
+ */
+class SceneSnapshot {
+	/** first entry of every snapshot */
+	private static final String MAGIC = "SCN1";
+
+	private final File file;
+	/** the snapshot of this run and the classes it holds, once restored */
+	private ZipFile zip;
+	private final Set<String> classNames = new HashSet<>();
+
+	/** Must be created before the soot classpath is changed by {@link #restore()}. */
+	SceneSnapshot(String dir) {
+		file = new File(dir, key() + ".jar");
+	}
+
+	@Override
+	public String toString() {
+		return file.toString();
+	}
+
+	/** Loads later classes from the snapshot; returns false if there is no usable snapshot. */
+	boolean restore() {
+		if (!file.isFile())
+			return false;
+		try {
+			zip = new ZipFile(file);
+		} catch (IOException e) {
+			System.out.println("Ignoring unreadable scene snapshot " + file + ": " + e);
+			return false;
+		}
+		if (zip.getEntry(MAGIC) == null) {
+			close();
+			return false;
+		}
+		zip.stream().map(ZipEntry::getName).filter(name -> name.endsWith(".jimple"))
+				.forEach(name -> classNames.add(name.substring(0, name.length() - ".jimple".length())));
+		final String classpath = file.getPath() + File.pathSeparator + Scene.v().getSootClassPath();
+		System.setProperty("soot.class.path", classpath);
+		Scene.v().setSootClassPath(classpath);
+		Options.v().set_src_prec(Options.src_prec_jimple);
+		return true;
+	}
+
+	/**
+	 * Lets the methods of the classes loaded from the snapshot read their
+	 * bodies directly from it; returns the number of these classes.
+	 */
+	int useBodies() {
+		int ret = 0;
+		for (SootClass cl : Scene.v().getClasses()) {
+			if (cl.isPhantom() || !classNames.contains(cl.getName()))
+				continue;
+			final SnapshotBodies bodies = new SnapshotBodies(cl.getName());
+			boolean loaded = false;
+			for (SootMethod m : cl.getMethods())
+				if (!m.hasActiveBody() && m.getSource() instanceof JimpleMethodSource) {
+					m.setSource(bodies);
+					loaded = true;
+				}
+			if (loaded)
+				ret++;
+		}
+		return ret;
+	}
+
+	private void close() {
+		try {
+			zip.close();
+		} catch (IOException e) {
+			// nothing was read from it
+		}
+		zip = null;
+	}
+
+	/** Parses the Jimple of one class once and hands out its bodies. */
+	private final class SnapshotBodies implements MethodSource {
+		private final String className;
+		private JimpleAST ast;
+
+		SnapshotBodies(String className) {
+			this.className = className;
+		}
+
+		@Override
+		public synchronized Body getBody(SootMethod m, String phaseName) {
+			if (ast == null)
+				try (InputStream in = zip.getInputStream(zip.getEntry(className + ".jimple"))) {
+					ast = new JimpleAST(in);
+				} catch (IOException | ParserException | LexerException e) {
+					throw new RuntimeException("Cannot read " + className + " from the scene snapshot " + file, e);
+				}
+			Body ret = ast.getBody(m);
+			if (ret == null)
+				throw new RuntimeException("No body for " + m + " in the scene snapshot " + file);
+			return ret;
+		}
+	}
+
+	/** Writes the resolved classes of the Scene; returns the number of classes stored. */
+	int write() {
+		List<SootClass> classes = new ArrayList<>();
+		for (SootClass cl : new ArrayList<>(Scene.v().getClasses()))
+			if (retrieveBodies(cl))
+				classes.add(cl);
+		File dir = file.getParentFile();
+		dir.mkdirs();
+		try {
+			File tmp = File.createTempFile("scene", ".tmp", dir);
+			try {
+				try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+					out.putNextEntry(new ZipEntry(MAGIC));
+					out.closeEntry();
+					Charset charset = Charset.defaultCharset();
+					CharsetEncoder encoder = charset.newEncoder();
+					Writer writer = new OutputStreamWriter(out, charset);
+					for (Iterator<SootClass> it = classes.iterator(); it.hasNext();) {
+						SootClass cl = it.next();
+						StringWriter text = new StringWriter();
+						PrintWriter printer = new PrintWriter(text);
+						Printer.v().printTo(cl, printer);
+						printer.flush();
+						if (!encoder.canEncode(text.getBuffer())) {
+							it.remove();
+							continue;
+						}
+						out.putNextEntry(new ZipEntry(cl.getName() + ".jimple"));
+						writer.write(text.toString());
+						writer.flush();
+						out.closeEntry();
+					}
+				}
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				tmp.delete();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot write the scene snapshot " + file, e);
+		}
+		return classes.size();
+	}
+
+	/**
+	 * Retrieves the missing bodies of a class resolved to bodies; returns false
+	 * if the class cannot be printed as complete Jimple.
+	 */
+	private static boolean retrieveBodies(SootClass cl) {
+		if (cl.isPhantom() || cl.resolvingLevel() < SootClass.BODIES)
+			return false;
+		for (SootMethod m : new ArrayList<>(cl.getMethods())) {
+			if (m.isPhantom())
+				return false;
+			if (!m.isConcrete() || m.hasActiveBody())
+				continue;
+			try {
+				m.retrieveActiveBody();
+			} catch (RuntimeException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// ======================snapshot key===========================
+	/** Hash of the classpath contents and of the options that change Jimple bodies. */
+	private static String key() {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			md.update((MAGIC + ";original-names=" + PTAOptions.originalName + ";").getBytes("UTF-8"));
+			List<File> files = new ArrayList<>();
+			for (String entry : Scene.v().getSootClassPath().split(File.pathSeparator))
+				files.addAll(contents(new File(entry)));
+			byte[] buf = new byte[1 << 16];
+			for (File f : files) {
+				md.update(f.getPath().getBytes("UTF-8"));
+				if (!f.isFile())
+					continue;
+				try (InputStream in = new FileInputStream(f)) {
+					for (int n; (n = in.read(buf)) > 0;)
+						md.update(buf, 0, n);
+				}
+			}
+			StringBuilder ret = new StringBuilder();
+			for (byte b : md.digest())
+				ret.append(String.format("%02x", b));
+			return ret.toString();
+		} catch (IOException | NoSuchAlgorithmException e) {
+			throw new RuntimeException("Cannot compute the scene snapshot key", e);
+		}
+	}
+
+	/** The files of a classpath entry, in a fixed order. */
+	private static List<File> contents(File entry) {
+		List<File> ret = new ArrayList<>();
+		if (entry.isDirectory()) {
+			ret.addAll(FileUtils.listFiles(entry, null, true));
+			ret.sort(Comparator.comparing(File::getPath));
+		} else
+			ret.add(entry);
+		return ret;
+	}
+}
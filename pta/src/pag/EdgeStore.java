@@ -0,0 +1,319 @@
+/* Java and Android Analysis Framework
+ * Copyright (C) 2017 Jingbo Lu and Yulei Sui
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package pag;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+import pag.node.var.Var_Node;
+import soot.util.ArrayNumberer;
+import soot.util.Numberable;
+import util.LongHashSet;
+
+/**
+ * Edges of one kind of the PAG, from nodes of type S to var nodes, stored by
+ * node number. Edges are kept in compressed sparse row form: the targets of
+ * all sources lie in one int array, and the targets of source number i are
+ * found between offsets[i] and offsets[i + 1]. Edges added after the last
+ * {@link #compact()}, i.e. while solving, go to an append-only overflow with
+ * one linked chain per source, which the next compaction folds into the rows.
+ * Compacted rows are sorted, so that duplicate edges are found by a binary
+ * search of the row of the source and a scan of its overflow chain; only the
+ * overflow edges of sources with long chains are kept in a hash set, until
+ * the next compaction.
+ *
+ * A labelled store also keeps a two-bit label per edge next to its target,
+ * e.g. the type filter of a simple edge, which scans read along with the
+ * targets.
+ */
+public final class EdgeStore<S extends Numberable> {
+	private final ArrayNumberer<Var_Node> targetNumberer;
+	private final ArrayNumberer<S> sourceNumberer;
+	/** number of targets of each source */
+	private int[] degree = new int[0];
+	private int sources = 0;
+	private int size = 0;
+
+	/* compacted rows */
+	private int[] offsets = new int[1];
+	private int[] targets = new int[0];
+	/** label of each target, null unless the store is labelled */
+	private byte[] labels;
+
+	/* overflow, entries start at 1 so that 0 ends a chain */
+	private int[] overflowHead = new int[0];
+	private int[] overflowTail = new int[0];
+	private int[] overflowTarget = new int[16];
+	private int[] overflowNext = new int[16];
+	private byte[] overflowLabel;
+	private int overflowSize = 0;
+	/** overflow edges, as source number << 32 | target number, of the sources with long chains */
+	private LongHashSet longChains = new LongHashSet();
+	/** overflow size which always triggers a compaction */
+	private static final int MAX_OVERFLOW = 1 << 20;
+	/** longest overflow chain which is scanned for duplicates */
+	private static final int MAX_SCAN = 32;
+	/** labels are packed below the targets when sorting a labelled row */
+	private static final int LABEL_BITS = 2, LABEL_MASK = (1 << LABEL_BITS) - 1;
+
+	EdgeStore(ArrayNumberer<S> sourceNumberer, ArrayNumberer<Var_Node> targetNumberer) {
+		this(sourceNumberer, targetNumberer, false);
+	}
+
+	EdgeStore(ArrayNumberer<S> sourceNumberer, ArrayNumberer<Var_Node> targetNumberer, boolean labelled) {
+		this.sourceNumberer = sourceNumberer;
+		this.targetNumberer = targetNumberer;
+		if (labelled) {
+			labels = new byte[0];
+			overflowLabel = new byte[16];
+		}
+	}
+
+	/** Adds the edge from --> to, returns true if it was not there yet. */
+	public boolean add(S from, Var_Node to) {
+		return add(from, to, 0);
+	}
+
+	/**
+	 * Adds the edge from --> to with a label, which a store that is not
+	 * labelled drops; returns true if the edge was not there yet.
+	 */
+	public boolean add(S from, Var_Node to, int label) {
+		final int src = from.getNumber(), tgt = to.getNumber();
+		if (contains(src, tgt))
+			return false;
+		if (overflowLabel != null && tgt > Integer.MAX_VALUE >>> LABEL_BITS)
+			throw new RuntimeException("too many target nodes for a labelled edge store");
+		if (src >= degree.length) {
+			int cap = Math.max(src + 1, degree.length * 3 / 2 + 16);
+			degree = Arrays.copyOf(degree, cap);
+			overflowHead = Arrays.copyOf(overflowHead, cap);
+			overflowTail = Arrays.copyOf(overflowTail, cap);
+		}
+		if (degree[src]++ == 0)
+			sources++;
+		size++;
+		if (++overflowSize == overflowTarget.length) {
+			overflowTarget = Arrays.copyOf(overflowTarget, overflowSize << 1);
+			overflowNext = Arrays.copyOf(overflowNext, overflowSize << 1);
+			if (overflowLabel != null)
+				overflowLabel = Arrays.copyOf(overflowLabel, overflowSize << 1);
+		}
+		if (overflowLabel != null)
+			overflowLabel[overflowSize] = (byte) label;
+		overflowTarget[overflowSize] = tgt;
+		overflowNext[overflowSize] = 0;
+		if (overflowHead[src] == 0)
+			overflowHead[src] = overflowSize;
+		else
+			overflowNext[overflowTail[src]] = overflowSize;
+		overflowTail[src] = overflowSize;
+		final int chain = degree[src] - rowLength(src);
+		if (chain == MAX_SCAN + 1) {
+			for (int e = overflowHead[src]; e != 0; e = overflowNext[e])
+				longChains.add(((long) src << 32) | overflowTarget[e]);
+		} else if (chain > MAX_SCAN + 1)
+			longChains.add(((long) src << 32) | tgt);
+		return true;
+	}
+
+	private int rowLength(int src) {
+		return src + 1 < offsets.length ? offsets[src + 1] - offsets[src] : 0;
+	}
+
+	private boolean contains(int src, int tgt) {
+		if (src >= degree.length || degree[src] == 0)
+			return false;
+		final int rowLength = rowLength(src);
+		if (rowLength > 0 && Arrays.binarySearch(targets, offsets[src], offsets[src + 1], tgt) >= 0)
+			return true;
+		if (degree[src] - rowLength > MAX_SCAN)
+			return longChains.contains(((long) src << 32) | tgt);
+		for (int e = overflowHead[src]; e != 0; e = overflowNext[e])
+			if (overflowTarget[e] == tgt)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Folds the overflow into the compressed rows once it has grown as large
+	 * as they are, so that rebuilding the rows costs amortized constant time
+	 * per edge.
+	 */
+	public void compact() {
+		if (overflowSize == 0 || overflowSize < Math.min(targets.length, MAX_OVERFLOW))
+			return;
+		final int rows = degree.length;
+		final int[] newOffsets = new int[rows + 1];
+		final int[] newTargets = new int[size];
+		final byte[] newLabels = labels == null ? null : new byte[size];
+		int pos = 0;
+		for (int src = 0; src < rows; src++) {
+			newOffsets[src] = pos;
+			final int start = pos;
+			if (src + 1 < offsets.length)
+				for (int i = offsets[src]; i < offsets[src + 1]; i++)
+					newTargets[pos++] = labels == null ? targets[i] : targets[i] << LABEL_BITS | labels[i];
+			if (overflowHead[src] != 0) {
+				for (int e = overflowHead[src]; e != 0; e = overflowNext[e])
+					newTargets[pos++] = labels == null ? overflowTarget[e]
+							: overflowTarget[e] << LABEL_BITS | overflowLabel[e];
+				Arrays.sort(newTargets, start, pos);
+			}
+			if (labels != null)
+				for (int i = start; i < pos; i++) {
+					newLabels[i] = (byte) (newTargets[i] & LABEL_MASK);
+					newTargets[i] >>>= LABEL_BITS;
+				}
+		}
+		newOffsets[rows] = pos;
+		offsets = newOffsets;
+		targets = newTargets;
+		labels = newLabels;
+		Arrays.fill(overflowHead, 0);
+		Arrays.fill(overflowTail, 0);
+		overflowTarget = new int[16];
+		overflowNext = new int[16];
+		if (labels != null)
+			overflowLabel = new byte[16];
+		overflowSize = 0;
+		longChains = new LongHashSet();
+	}
+
+	/** Returns a view of the targets of from. */
+	public Targets lookup(S from) {
+		return new Targets(from.getNumber());
+	}
+
+	public boolean contains(S from, Var_Node to) {
+		return contains(from.getNumber(), to.getNumber());
+	}
+
+	/** Number of edges. */
+	public int size() {
+		return size;
+	}
+
+	/** Number of nodes with at least one outgoing edge. */
+	public int sourceCount() {
+		return sources;
+	}
+
+	/** Iterates over the nodes with at least one outgoing edge. */
+	public Iterable<S> sources() {
+		return () -> new Iterator<S>() {
+			private int next = advance(0);
+
+			private int advance(int i) {
+				while (i < degree.length && degree[i] == 0)
+					i++;
+				return i;
+			}
+
+			public boolean hasNext() {
+				return next < degree.length;
+			}
+
+			public S next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				S ret = sourceNumberer.get(next);
+				next = advance(next + 1);
+				return ret;
+			}
+		};
+	}
+
+	/**
+	 * The targets of one source: its compressed row followed by its overflow
+	 * chain. The view is live, edges added meanwhile show up at its end.
+	 */
+	public final class Targets implements Iterable<Var_Node> {
+		private final int src;
+
+		private Targets(int src) {
+			this.src = src;
+		}
+
+		public int size() {
+			return src < degree.length ? degree[src] : 0;
+		}
+
+		public boolean isEmpty() {
+			return size() == 0;
+		}
+
+		/**
+		 * Passes every target and the label of its edge to action; labels are
+		 * 0 unless the store is labelled.
+		 */
+		public void forEachLabelled(LabelledAction action) {
+			if (src + 1 < offsets.length)
+				for (int i = offsets[src], end = offsets[src + 1]; i < end; i++)
+					action.accept(targetNumberer.get(targets[i]), labels == null ? 0 : labels[i]);
+			if (src < overflowHead.length)
+				for (int e = overflowHead[src]; e != 0; e = overflowNext[e])
+					action.accept(targetNumberer.get(overflowTarget[e]), overflowLabel == null ? 0 : overflowLabel[e]);
+		}
+
+		/** Passes the number of every target to action, without allocating. */
+		public void forEachNumber(IntConsumer action) {
+			if (src + 1 < offsets.length)
+				for (int i = offsets[src], end = offsets[src + 1]; i < end; i++)
+					action.accept(targets[i]);
+			if (src < overflowHead.length)
+				for (int e = overflowHead[src]; e != 0; e = overflowNext[e])
+					action.accept(overflowTarget[e]);
+		}
+
+		public Iterator<Var_Node> iterator() {
+			return new Iterator<Var_Node>() {
+				private int pos = src + 1 < offsets.length ? offsets[src] : 0;
+				private final int end = src + 1 < offsets.length ? offsets[src + 1] : 0;
+				private int entry = -1; // -1 while in the compressed row
+
+				public boolean hasNext() {
+					if (entry < 0 && pos < end)
+						return true;
+					if (entry < 0)
+						entry = src < overflowHead.length ? overflowHead[src] : 0;
+					return entry != 0;
+				}
+
+				public Var_Node next() {
+					if (!hasNext())
+						throw new NoSuchElementException();
+					if (entry < 0)
+						return targetNumberer.get(targets[pos++]);
+					Var_Node ret = targetNumberer.get(overflowTarget[entry]);
+					entry = overflowNext[entry];
+					return ret;
+				}
+			};
+		}
+	}
+
+	/** Receives the targets of {@link Targets#forEachLabelled}. */
+	public interface LabelledAction {
+		void accept(Var_Node target, int label);
+	}
+}
@@ -32,6 +32,7 @@ import driver.PTAOptions;
 import pag.builder.MtdPAGBuilder;
 import pag.nativeModel.NativeMethodDriver;
 import pag.node.GNode;
+import pta.PAGFragmentCache;
 import pta.PTA;
 import reflection.TraceBasedReflectionModel;
 import soot.Body;
@@ -113,7 +114,13 @@ public class MethodPAG {
 	protected void build() {
 		buildReflective();
 		buildNative();
-		buildNormal();
+		PAGFragmentCache cache = PAGFragmentCache.v();
+		if (cache == null || !cache.replay(this)) {
+			QueueReader<GNode> normalEdges = internalReader.clone();
+			buildNormal();
+			if (cache != null)
+				cache.record(this, normalEdges);
+		}
 		addClinits();
 //		buildException();
 		addMiscEdges();
@@ -19,10 +19,11 @@
 
 package pag;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -39,12 +40,15 @@ import pag.node.var.LocalVar_Node;
 import pag.node.var.Var_Node;
 import pta.pts.DoublePTSet;
 import pta.pts.HybridPTSet;
+import pta.pts.RoaringPTSet;
 import pta.pts.PTSetFactory;
 
 import static driver.PTAOptions.sparkOpts;
 
+import soot.AnySubType;
 import soot.FastHierarchy;
 import soot.Local;
+import soot.NullType;
 import soot.PointsToAnalysis;
 import soot.RefType;
 import soot.Scene;
@@ -93,13 +97,19 @@ public class PAG {
 	protected ChunkedQueue<Pair<Var_Node,Var_Node>> simpleQueue = new ChunkedQueue<>();
 	protected ChunkedQueue<Pair<FieldRef_Node,Var_Node>> loadQueue = new ChunkedQueue<>();
 	protected ChunkedQueue<Pair<Var_Node,FieldRef_Node>> storeQueue = new ChunkedQueue<>();
-	protected Map<Alloc_Node, Set<Var_Node>> alloc = new HashMap<Alloc_Node, Set<Var_Node>>();
-	protected Map<Var_Node, Set<Var_Node>> simple = new HashMap<Var_Node, Set<Var_Node>>();
-	protected Map<Var_Node, Set<Var_Node>> simpleInv = new HashMap<Var_Node, Set<Var_Node>>();//used in some pre-analysis, can be removed if not needed
-	protected Map<FieldRef_Node, Set<Var_Node>> load = new HashMap<FieldRef_Node, Set<Var_Node>>();
-	protected Map<FieldRef_Node, Set<Var_Node>> storeInv = new HashMap<FieldRef_Node, Set<Var_Node>>();
+	protected final EdgeStore<Alloc_Node> alloc = new EdgeStore<>(allocNodeNumberer, varNodeNumberer);
+	/** simple edges, labelled with their type filter */
+	protected final EdgeStore<Var_Node> simple = new EdgeStore<>(varNodeNumberer, varNodeNumberer, true);
+	protected final EdgeStore<Var_Node> simpleInv = new EdgeStore<>(varNodeNumberer, varNodeNumberer);//used in some pre-analysis, can be removed if not needed
+	protected final EdgeStore<FieldRef_Node> load = new EdgeStore<>(fieldRefNodeNumberer, varNodeNumberer);
+	protected final EdgeStore<FieldRef_Node> storeInv = new EdgeStore<>(fieldRefNodeNumberer, varNodeNumberer);
 	public Alloc_Node rootNode;
 
+	/** type filter of a simple edge, see {@link #simpleEdgeFilter} */
+	public static final int FILTER_NONE = 0, FILTER_MASK = 1, FILTER_EMPTY = 2;
+	/** alloc nodes of AnySubType or NullType, which pass every type filter */
+	private final List<Alloc_Node> untypedAllocNodes = new ArrayList<>();
+
 	public PAG() {
 		setupPTSOptions();
 		typeManager = new TypeMask(this);
@@ -116,6 +126,11 @@ public class PAG {
 			PTSetFactory oldF;
 			PTSetFactory newF;
 			
+			if (PTAOptions.ptsImpl == PTAOptions.ROARING) {
+				oldF = newF = RoaringPTSet.getFactory();
+				setFactory = DoublePTSet.getFactory(newF, oldF);
+				break;
+			}
 			switch (sparkOpts.double_set_old()) {
 			case SparkOptions.double_set_old_hybrid:
 				oldF = HybridPTSet.getFactory();
@@ -167,26 +182,39 @@ public class PAG {
 		return typeManager;
 	}
 
-	public Map<Alloc_Node, Set<Var_Node>> getAlloc() {
+	public EdgeStore<Alloc_Node> getAlloc() {
 		return alloc;
 	}
 
-	public Map<Var_Node, Set<Var_Node>> getSimple() {
+	public EdgeStore<Var_Node> getSimple() {
 		return simple;
 	}
 	
-	public Map<Var_Node, Set<Var_Node>> getSimpleInv() {
+	public EdgeStore<Var_Node> getSimpleInv() {
 		return simpleInv;
 	}
 
-	public Map<FieldRef_Node, Set<Var_Node>> getLoad() {
+	public EdgeStore<FieldRef_Node> getLoad() {
 		return load;
 	}
 
-	public Map<FieldRef_Node, Set<Var_Node>> getStoreInv() {
+	public EdgeStore<FieldRef_Node> getStoreInv() {
 		return storeInv;
 	}
 
+	/**
+	 * Moves the edges added since the last compaction into the compressed rows
+	 * of the edge stores whose overflow has grown large. Must not be called
+	 * while iterating over a lookup.
+	 */
+	public void compactEdges() {
+		alloc.compact();
+		simple.compact();
+		simpleInv.compact();
+		load.compact();
+		storeInv.compact();
+	}
+
 	/** Returns list of dereferences variables. */
 
 	// ===============================read data==========================
@@ -227,37 +255,69 @@ public class PAG {
 	public void addAllocEdge(Alloc_Node from, Var_Node to) {
 		FastHierarchy fh = typeManager.getFastHierarchy();
 		if ((fh == null || to.getType() == null || fh.canStoreType(from.getType(), to.getType()))
-				&& addToMap(alloc, from, to)) {
+				&& alloc.add(from, to)) {
 			allocQueue.add(new Pair<>(from,to));
 		}
 	}
 
 	public void addSimpleEdge(Var_Node from, Var_Node to) {
-		if (addToMap(simple, from, to)) {
+		if (simple.add(from, to, simpleEdgeFilter(from, to))) {
 			simpleQueue.add(new Pair<>(from,to));
-			addToMap(simpleInv, to, from);
+			simpleInv.add(to, from);
 		}
-		if (sparkOpts.simple_edges_bidirectional() && addToMap(simple, to, from)) {
+		if (sparkOpts.simple_edges_bidirectional() && simple.add(to, from, simpleEdgeFilter(to, from))) {
 			simpleQueue.add(new Pair<>(to,from));
 		}
 	}
 
+	/**
+	 * Returns FILTER_NONE if every object of from passes the type filter of
+	 * to, FILTER_EMPTY if only objects of unknown type (see
+	 * {@link #getUntypedAllocNodes}) can pass it, and FILTER_MASK if each
+	 * object has to be checked. Points-to sets only hold objects storable in
+	 * the type of their node, so nothing needs to be checked if the source
+	 * type can be stored in the target type. The filter only depends on the
+	 * types of from and to, and nodes are merged only with nodes of the same
+	 * type, so it also holds for their representatives. Simple edges keep it
+	 * as their label, see {@link EdgeStore.Targets#forEachLabelled}.
+	 */
+	public int simpleEdgeFilter(Var_Node from, Var_Node to) {
+		final Type src = from.getType(), dst = to.getType();
+		if (typeManager.castNeverFails(src, dst) && !(src instanceof AnySubType))
+			return FILTER_NONE;
+		return typeManager.castAlwaysFails(src, dst) ? FILTER_EMPTY : FILTER_MASK;
+	}
+
+	/** Registers an alloc node; those of unknown type are remembered. */
+	public void addAllocNode(Alloc_Node node) {
+		allocNodeNumberer.add(node);
+		final Type t = node.getType();
+		if (t instanceof AnySubType || t instanceof NullType)
+			untypedAllocNodes.add(node);
+	}
+
+	/** Alloc nodes of AnySubType or NullType, which pass every type filter. */
+	public List<Alloc_Node> getUntypedAllocNodes() {
+		return untypedAllocNodes;
+	}
+
 	public void addStoreEdge(Var_Node from, FieldRef_Node to) {
-		if (!sparkOpts.rta() && addToMap(storeInv, to, from)) {
+		if (!sparkOpts.rta() && storeInv.add(to, from)) {
 			storeQueue.add(new Pair<>(from,to));
 		}
 	}
 
 	public void addLoadEdge(FieldRef_Node from, Var_Node to) {
-		if (!sparkOpts.rta() && addToMap(load, from, to)) {
+		if (!sparkOpts.rta() && load.add(from, to)) {
 			loadQueue.add(new Pair<>(from,to));
 		}
 	}
 
-	/** Adds an edge to the graph, returning false if it was already there. */
+	/**
+	 * Adds an edge to the graph. Edges keep their original end points even if
+	 * these have been merged; the solver resolves them by getReplacement().
+	 */
 	public final void addEdge(GNode from, GNode to) {
-		from = from.getReplacement();
-		to = to.getReplacement();
 		if (from instanceof Var_Node)
 			if (to instanceof Var_Node)
 				addSimpleEdge((Var_Node) from, (Var_Node) to);
@@ -270,25 +330,18 @@ public class PAG {
 	}
 
 	// ======================lookups===========================
-	protected static <K, V> Set<V> lookup(Map<K, Set<V>> m, K key) {
-		Set<V> valueList = m.get(key);
-		if (valueList == null)
-			return Collections.emptySet();
-		return valueList;
+	public EdgeStore<Var_Node>.Targets simpleLookup(Var_Node key) {
+		return simple.lookup(key);
 	}
-
-	public Set<Var_Node> simpleLookup(Var_Node key) {
-		return lookup(simple, key);
+	public EdgeStore<Var_Node>.Targets simpleInvLookup(Var_Node key) {
+		return simpleInv.lookup(key);
 	}
-	public Set<Var_Node> simpleInvLookup(Var_Node key) {
-		return lookup(simpleInv, key);
-	}
-	public Set<Var_Node> loadLookup(FieldRef_Node key) {
-		return lookup(load, key);
+	public EdgeStore<FieldRef_Node>.Targets loadLookup(FieldRef_Node key) {
+		return load.lookup(key);
 	}
 
-	public Set<Var_Node> storeInvLookup(FieldRef_Node key) {
-		return lookup(storeInv, key);
+	public EdgeStore<FieldRef_Node>.Targets storeInvLookup(FieldRef_Node key) {
+		return storeInv.lookup(key);
 	}
 
 	// ===================find nodes==============================
@@ -340,7 +393,11 @@ public class PAG {
 	}
 
 	// ==========================create nodes==================================
-	public Alloc_Node makeAllocNode(Object newExpr, Type type, SootMethod m) {
+	/*
+	 * Nodes are created under the lock of the PAG, so that method PAGs can be
+	 * built on several threads; see PTAOptions.parallelPAG.
+	 */
+	public synchronized Alloc_Node makeAllocNode(Object newExpr, Type type, SootMethod m) {
 		if (sparkOpts.types_for_sites() || sparkOpts.vta())
 			newExpr = type;
 		Alloc_Node ret = valToAllocNode.get(newExpr);
@@ -352,7 +409,7 @@ public class PAG {
 		return ret;
 	}
 
-	public Alloc_Node makeStringConstantNode(StringConstant sc) {
+	public synchronized Alloc_Node makeStringConstantNode(StringConstant sc) {
 		if (!PTAOptions.stringConstants ||  //merge all string constants
 				(sparkOpts.types_for_sites() || sparkOpts.vta())&&!Scene.v().containsClass(sc.value))//merge all string constants which are not classnames
 			sc = StringConstant.v(PointsToAnalysis.STRING_NODE);
@@ -363,7 +420,7 @@ public class PAG {
 //		return makeAllocNode(sc, RefType.v("java.lang.String"), null);
 	}
 
-	public Alloc_Node makeClassConstantNode(ClassConstant cc) {
+	public synchronized Alloc_Node makeClassConstantNode(ClassConstant cc) {
 		if (sparkOpts.types_for_sites() || sparkOpts.vta())
 			cc=ClassConstant.v("java.lang.Class");
 		Alloc_Node ret = valToAllocNode.get(cc);
@@ -377,7 +434,7 @@ public class PAG {
 	/**
 	 * Finds or creates the GlobalVarNode for the variable value, of type type.
 	 */
-	public GlobalVar_Node makeGlobalVarNode(Object value, Type type) {
+	public synchronized GlobalVar_Node makeGlobalVarNode(Object value, Type type) {
 		if (sparkOpts.rta()) {
 			value = null;
 			type = RefType.v("java.lang.Object");
@@ -395,7 +452,7 @@ public class PAG {
 	/**
 	 * Finds or creates the LocalVarNode for the variable value, of type type.
 	 */
-	public LocalVar_Node makeLocalVarNode(Object value, Type type, SootMethod method) {
+	public synchronized LocalVar_Node makeLocalVarNode(Object value, Type type, SootMethod method) {
 		if (sparkOpts.rta()) {
 			value = null;
 			type = RefType.v("java.lang.Object");
@@ -419,7 +476,7 @@ public class PAG {
 	 * Finds or creates the FieldRefNode for base variable base and field field,
 	 * of type type.
 	 */
-	public FieldRef_Node makeFieldRefNode(Var_Node base, SparkField field) {
+	public synchronized FieldRef_Node makeFieldRefNode(Var_Node base, SparkField field) {
 		FieldRef_Node ret = base.dot(field);
 		if (ret == null) {
 			ret = new FieldRef_Node(this, base, field);
@@ -431,7 +488,7 @@ public class PAG {
 	 * Finds or creates the AllocDotField for base variable baseValue and field
 	 * field, of type t.
 	 */
-	public AllocDotField_Node makeAllocDotField(Alloc_Node an, Object field) {
+	public synchronized AllocDotField_Node makeAllocDotField(Alloc_Node an, Object field) {
 		AllocDotField_Node ret = an.dot(field);
 		return ret != null ? ret : new AllocDotField_Node(this, an, field);
 	}
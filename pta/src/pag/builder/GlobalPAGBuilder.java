@@ -110,12 +110,15 @@ public class GlobalPAGBuilder {
 	/* End of package methods. */
 
 	protected void addParameterizedGlobalPAGEdge(GNode from, GNode to) {
-		if (pta instanceof ContextSensPTA){
-			ContextSensPTA cspta = (ContextSensPTA) pta;
-			from = cspta.parameterize(from, cspta.emptyContext());
-			to = cspta.parameterize(to, cspta.emptyContext());
+		// method PAGs built in parallel add global edges too
+		synchronized (pag) {
+			if (pta instanceof ContextSensPTA){
+				ContextSensPTA cspta = (ContextSensPTA) pta;
+				from = cspta.parameterize(from, cspta.emptyContext());
+				to = cspta.parameterize(to, cspta.emptyContext());
+			}
+			pag.addEdge(from, to);
 		}
-		pag.addEdge(from, to);
 	}
 
 	protected PAG pag;
@@ -25,6 +25,10 @@ import soot.shimple.*;
  * @author Ondrej Lhotak
  */
 public class MtdPAGBuilder extends AbstractShimpleValueSwitch {
+	/** types of the objects made for empty collections with empties_as_allocs */
+	private static final String[] EMPTY_COLLECTION_TYPES = { "java.util.HashSet", "java.util.HashMap",
+			"java.util.LinkedList", "java.util.Hashtable$EmptyIterator", "java.util.Hashtable$EmptyEnumerator" };
+
 	public Set<SootClass> clinitclasses = new HashSet<>();
 	private void addToClinits(SootClass cls){
 		clinitclasses.add(cls);
@@ -35,6 +39,30 @@ public class MtdPAGBuilder extends AbstractShimpleValueSwitch {
 		this.mpag = mpag;
 		method = mpag.getMethod();
     }
+	/**
+	 * Creates the soot objects which building the PAG of m would otherwise add
+	 * to soot's unsynchronized tables: the Parms of its parameters and return
+	 * value, the array types of its values and the types of empty collections.
+	 * Called on one thread before the PAGs of several methods are built in
+	 * parallel, so that the builders only look these objects up.
+	 */
+	public static void internSootObjects(SootMethod m) {
+		for (int i = 0; i < m.getParameterCount(); i++)
+			Parm.v(m, i);
+		Parm.v(m, PointsToAnalysis.RETURN_NODE);
+		if (sparkOpts.empties_as_allocs())
+			for (String type : EMPTY_COLLECTION_TYPES)
+				RefType.v(type);
+		if (!m.hasActiveBody())
+			return;
+		for (Unit u : m.getActiveBody().getUnits())
+			for (ValueBox box : u.getUseAndDefBoxes()) {
+				Type t = box.getValue().getType();
+				while (t instanceof ArrayType)
+					t = ((ArrayType) t).getElementType();
+			}
+	}
+
 	public GNode getNode(Value v) {
 		v.apply(this);
 		return getNode();
@@ -292,19 +320,15 @@ public class MtdPAGBuilder extends AbstractShimpleValueSwitch {
 	
 	@Override
 	final public void caseStringConstant(StringConstant sc) {
-		Alloc_Node stringConstantNode = pag.makeStringConstantNode(sc);
-		Var_Node stringConstantVar = pag.makeGlobalVarNode(sc, RefType.v("java.lang.String"));
-		pag.GlobalNodeFactory().addParameterizedGlobalPAGEdge(stringConstantNode, stringConstantVar);
-		Var_Node vn = pag.makeLocalVarNode(new Pair<>(method, sc),RefType.v("java.lang.String"), method);
+		Var_Node stringConstantVar = makeConstantGlobal(sc);
+		Var_Node vn = makeConstantLocal(sc);
 		mpag.addInternalEdge(stringConstantVar, vn);
 		setResult(vn);
 	}
 	@Override
 	final public void caseClassConstant(ClassConstant cc) {
-		Alloc_Node classConstant = pag.makeClassConstantNode(cc);
-		Var_Node classConstantVar = pag.makeGlobalVarNode(cc, RefType.v("java.lang.Class"));
-		pag.GlobalNodeFactory().addParameterizedGlobalPAGEdge(classConstant, classConstantVar);
-		Var_Node vn = pag.makeLocalVarNode(new Pair<>(method, cc),RefType.v("java.lang.Class"), method);
+		Var_Node classConstantVar = makeConstantGlobal(cc);
+		Var_Node vn = makeConstantLocal(cc);
 		mpag.addInternalEdge(classConstantVar, vn);
 		setResult(vn);
 		
@@ -313,6 +337,31 @@ public class MtdPAGBuilder extends AbstractShimpleValueSwitch {
 //			addToClinits(cc..getDeclaringClass());
 	}
 
+	/**
+	 * Makes the object and the global var node of a string or class constant
+	 * and the global edge between them; unlike caseStringConstant and
+	 * caseClassConstant, adds no edge to the PAG of this method.
+	 */
+	final public Var_Node makeConstantGlobal(Constant c) {
+		final Alloc_Node constant;
+		if (c instanceof StringConstant)
+			constant = pag.makeStringConstantNode((StringConstant) c);
+		else
+			constant = pag.makeClassConstantNode((ClassConstant) c);
+		Var_Node constantVar = pag.makeGlobalVarNode(c, constantType(c));
+		pag.GlobalNodeFactory().addParameterizedGlobalPAGEdge(constant, constantVar);
+		return constantVar;
+	}
+
+	/** Makes the local var node standing for a string or class constant in this method. */
+	final public Var_Node makeConstantLocal(Constant c) {
+		return pag.makeLocalVarNode(new Pair<>(method, c), constantType(c), method);
+	}
+
+	private static Type constantType(Constant c) {
+		return c instanceof StringConstant ? RefType.v("java.lang.String") : RefType.v("java.lang.Class");
+	}
+
 	@Override
 	final public void defaultCase(Object v) {
 		throw new RuntimeException("failed to handle " + v);
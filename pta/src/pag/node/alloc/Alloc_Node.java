@@ -1,5 +1,6 @@
 package pag.node.alloc;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -28,9 +29,9 @@ public class Alloc_Node extends GNode implements ContextElement{
 
 	/** Returns all field ref nodes having this node as their base. */
 	public Collection<AllocDotField_Node> getAllFieldRefs() {
-		if (fields == null)
+		if (fieldCount == 0)
 			return Collections.emptySet();
-		return fields.values();
+		return Collections.unmodifiableList(Arrays.asList(fieldNodes).subList(0, fieldCount));
 	}
 
 	/**
@@ -38,7 +39,12 @@ public class Alloc_Node extends GNode implements ContextElement{
 	 * field; null if nonexistent.
 	 */
 	public AllocDotField_Node dot(Object field) {
-		return fields == null ? null : fields.get(field);
+		if (fields != null)
+			return fields.get(field);
+		for (int i = 0; i < fieldCount; i++)
+			if (fieldKeys[i] == field)
+				return fieldNodes[i];
+		return null;
 	}
 
 	public String toString() {
@@ -56,19 +62,41 @@ public class Alloc_Node extends GNode implements ContextElement{
 		this.newExpr = newExpr;
 		if (newExpr instanceof ContextVar_Node)
 			throw new RuntimeException();
-		pag.getAllocNodeNumberer().add(this);
+		pag.addAllocNode(this);
 	}
 
 	/** Registers a AllocDotField as having this node as its base. */
 	public void addField(AllocDotField_Node adf, Object field) {
-		if (fields == null)
+		if (fieldKeys == null) {
+			fieldKeys = new Object[2];
+			fieldNodes = new AllocDotField_Node[2];
+		} else if (fieldCount == fieldKeys.length) {
+			fieldKeys = Arrays.copyOf(fieldKeys, fieldCount << 1);
+			fieldNodes = Arrays.copyOf(fieldNodes, fieldCount << 1);
+		}
+		fieldKeys[fieldCount] = field;
+		fieldNodes[fieldCount++] = adf;
+		if (fields != null)
+			fields.put(field, adf);
+		else if (fieldCount > MAX_SCANNED_FIELDS) {
 			fields = new HashMap<>();
-		fields.put(field, adf);
+			for (int i = 0; i < fieldCount; i++)
+				fields.put(fieldKeys[i], fieldNodes[i]);
+		}
 	}
 
 	/* End of package methods. */
 
 	protected Object newExpr;
+	/**
+	 * Fields (SparkFields or nodes, compared by identity) and their nodes, in
+	 * creation order. Most objects have a few fields, which are found by a
+	 * linear scan; the map indexes objects with more fields.
+	 */
+	private static final int MAX_SCANNED_FIELDS = 8;
+	protected Object[] fieldKeys;
+	protected AllocDotField_Node[] fieldNodes;
+	protected int fieldCount = 0;
 	protected Map<Object, AllocDotField_Node> fields;
 
 	private SootMethod method;
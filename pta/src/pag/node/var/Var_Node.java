@@ -49,6 +49,10 @@ public abstract class Var_Node extends Val_Node implements Comparable<Var_Node>
 		return other.finishingNumber - finishingNumber;
 	}
 
+	public int getFinishingNumber() {
+		return finishingNumber;
+	}
+
 	public void setFinishingNumber(int i) {
 		finishingNumber = i;
 		if (i > pag.maxFinishNumber)
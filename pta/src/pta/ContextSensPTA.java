@@ -35,12 +35,14 @@ import pag.node.var.Var_Node;
 import pta.context.*;
 import pta.pts.EmptyPTSet;
 import pta.pts.PTSetInternal;
-import pta.pts.PTSetVisitor;
+import util.LongHashMap;
+import util.LongHashSet;
 
 import java.util.*;
 
 import soot.AnySubType;
 import soot.Context;
+import soot.G;
 import soot.Kind;
 import soot.Local;
 import soot.MethodOrMethodContext;
@@ -63,6 +65,7 @@ import soot.jimple.toolkits.callgraph.CallGraph;
 import soot.jimple.toolkits.callgraph.Edge;
 import soot.options.Options;
 import soot.toolkits.scalar.Pair;
+import soot.util.ArrayNumberer;
 import soot.util.NumberedString;
 import soot.util.queue.ChunkedQueue;
 import soot.util.queue.QueueReader;
@@ -85,7 +88,7 @@ public class ContextSensPTA extends PTA {
 				System.arraycopy(cxt, 0, array, 0, Math.min(cxt.length, hk));
 			} else
 				array[0] = (ContextElement) context;
-			return new ContextElements(array);
+			return contexts.v(array);
 		}
 
 		@Override
@@ -99,7 +102,7 @@ public class ContextSensPTA extends PTA {
 				} else
 					array[1] = (ContextElement) callerContext;
 			}
-			return new ContextElements(array);
+			return contexts.v(array);
 		}
 	}
 	//implementation of obj context...(Ana Tosem'05)
@@ -116,7 +119,7 @@ public class ContextSensPTA extends PTA {
 				System.arraycopy(cxtAllocs, 0, array, 0, Math.min(hk, cxtAllocs.length));
 			} else
 				array[0] = (ContextElement) context;
-			return new ContextElements(array);
+			return contexts.v(array);
 		}
 
 		@Override
@@ -133,11 +136,15 @@ public class ContextSensPTA extends PTA {
 				} else
 					array[1] = (ContextElement) context;
 			}
-			return new ContextElements(array);
+			return contexts.v(array);
 		}
 	}
 
 	private class ParamSensCxtGenerator implements ContextGenerator{
+		/** parameter context elements of this analysis, keyed by receiver base and arguments */
+		private final Map<Alloc_Node, Map<List<Value>, ParamContextElement>> universe = new HashMap<>();
+		/** finished contexts, keyed by (call site number, receiver base number) */
+		private final LongHashMap<Context> memo = new LongHashMap<>();
 
 		@Override
 		public Context heapSelector(Context context) {
@@ -151,24 +158,37 @@ public class ContextSensPTA extends PTA {
 				System.arraycopy(cxtAllocs, 0, array, 0, Math.min(hk, cxtAllocs.length));
 			} else
 				array[0] = (ContextElement) context;
-			return new ContextElements(array);
+			return contexts.v(array);
 		}
 
 		@Override
 
 		public Context selector(SootMethod method,Context callerContext, CallSite callSite, ContextAlloc_Node receiverNode) {
-			ContextElement[] array = new ContextElement[k];
-			List<Value> params = new ArrayList<>();
 			Alloc_Node base = null;
-			Stmt stmt = (Stmt) callSite.getUnit();
-			InvokeExpr ie = stmt.getInvokeExpr();
 			if(receiverNode!=null){
 				base = receiverNode.base();
 			}
+			long key = ((long) callSite.getNumber() << 32) | (base == null ? 0 : base.getNumber());
+			Context ret = memo.get(key);
+			if (ret != null)
+				return ret;
+			ContextElement[] array = new ContextElement[k];
+			List<Value> params = new ArrayList<>();
+			Stmt stmt = (Stmt) callSite.getUnit();
+			InvokeExpr ie = stmt.getInvokeExpr();
 			params.addAll(ie.getArgs());
-			array[0] = ParamContextElement.v(base,params);
+			array[0] = paramContextElement(base,params);
 			if(k>1){}
-			return new ContextElements(array);
+			memo.put(key, ret = contexts.v(array));
+			return ret;
+		}
+
+		private ParamContextElement paramContextElement(Alloc_Node base, List<Value> params) {
+			Map<List<Value>, ParamContextElement> recs = universe.computeIfAbsent(base, b -> new HashMap<>());
+			ParamContextElement rec = recs.get(params);
+			if (rec == null)
+				recs.put(params, rec = new ParamContextElement(base, params));
+			return rec;
 		}
 
 		/*public Context selector(SootMethod method,Context callerContext, CallSite callSite, ContextAlloc_Node receiverNode) {
@@ -196,7 +216,7 @@ public class ContextSensPTA extends PTA {
 			}
 			array[0] = ParamContextElement.v(base,paramPTS);
 			if(k>1){}
-			return new ContextElements(array);
+			return contexts.v(array);
 		}*/
 
 		/*public Context selector(SootMethod method,Context callerContext, CallSite callSite, ContextAlloc_Node receiverNode) {
@@ -224,10 +244,97 @@ public class ContextSensPTA extends PTA {
 			}
 			array[0] = ParamContextElement.v(paramNode);
 			if(k>1){}
-			return new ContextElements(array);
+			return contexts.v(array);
 		}*/
 	}
 
+	/**
+	 * Parameter sensitivity on the points-to sets of the arguments in the
+	 * caller's context, as seen when the call edge is added. These sets are
+	 * still growing, so the contexts made depend on the order in which the
+	 * solver propagates, and sequential and parallel solving may disagree;
+	 * the solver check does not support this kind of context.
+	 *
+	 * The sorted alloc numbers and the fingerprint of every argument set are
+	 * kept until the set grows, so that calls with unchanged sets neither walk
+	 * them nor copy them.
+	 */
+	private class ParamPTSSensCxtGenerator implements ContextGenerator {
+		/** contexts of this analysis, keyed by the combined fingerprint of receiver base and arguments */
+		private final LongHashMap<List<ContextElements>> universe = new LongHashMap<>();
+		/** last snapshot of every argument set: its size, fingerprint and sorted alloc numbers */
+		private final Map<PTSetInternal, ArgSnapshot> snapshots = new IdentityHashMap<>();
+		private final int[] noArg = new int[0];
+
+		@Override
+		public Context heapSelector(Context context) {
+			if (hk == k)
+				return context;
+			if (hk == 0)
+				return emptyContext;
+			ContextElement[] array = new ContextElement[hk];
+			if (context instanceof ContextElements) {
+				ContextElement[] cxtAllocs = ((ContextElements) context).getElements();
+				System.arraycopy(cxtAllocs, 0, array, 0, Math.min(hk, cxtAllocs.length));
+			} else
+				array[0] = (ContextElement) context;
+			return contexts.v(array);
+		}
+
+		@Override
+		public Context selector(SootMethod method,Context callerContext, CallSite callSite, ContextAlloc_Node receiverNode) {
+			Alloc_Node base = receiverNode == null ? null : receiverNode.base();
+			InvokeExpr ie = ((Stmt) callSite.getUnit()).getInvokeExpr();
+			int[][] args = new int[ie.getArgCount()][];
+			long fingerprint = base == null ? 0 : base.getNumber();
+			for (int i = 0; i < args.length; i++) {
+				Value arg = ie.getArg(i);
+				ArgSnapshot snapshot = null;
+				if (arg instanceof Local && arg.getType() instanceof RefLikeType) {
+					ContextVar_Node argNode = findContextVarNode((Local) arg, callerContext);
+					if (argNode != null)
+						snapshot = snapshot(argNode.getP2Set());
+				}
+				args[i] = snapshot == null ? noArg : snapshot.numbers;
+				fingerprint = fingerprint * 31 + (snapshot == null ? 0 : snapshot.fingerprint);
+			}
+			List<ContextElements> recs = universe.get(fingerprint);
+			if (recs == null)
+				universe.put(fingerprint, recs = new ArrayList<>(1));
+			for (ContextElements rec : recs)
+				if (((ParamPTSContextElement) rec.getElements()[0]).matches(base, args))
+					return rec;
+			ContextElement[] array = new ContextElement[k];
+			array[0] = new ParamPTSContextElement(base, fingerprint, args);
+			ContextElements ret = contexts.v(array);
+			recs.add(ret);
+			return ret;
+		}
+
+		private ArgSnapshot snapshot(PTSetInternal pts) {
+			final int size = pts.size();
+			ArgSnapshot ret = snapshots.get(pts);
+			if (ret != null && ret.numbers.length == size)
+				return ret;
+			final int[] numbers = new int[size];
+			final int[] pos = { 0 };
+			pts.forEachNumber(number -> numbers[pos[0]++] = number);
+			Arrays.sort(numbers);
+			snapshots.put(pts, ret = new ArgSnapshot(numbers));
+			return ret;
+		}
+	}
+
+	private static final class ArgSnapshot {
+		final int[] numbers;
+		final long fingerprint;
+
+		ArgSnapshot(int[] numbers) {
+			this.numbers = numbers;
+			this.fingerprint = ParamPTSContextElement.fingerprint(numbers);
+		}
+	}
+
 	//implementation of type context...(Yannis popl'11)
 	private class TypeSensCxtGenerator implements ContextGenerator {
 		@Override
@@ -242,7 +349,7 @@ public class ContextSensPTA extends PTA {
 				System.arraycopy(ctxAllocs, 0, array, 0, Math.min(hk,ctxAllocs.length));
 			} else
 				array[0] = (ContextElement) context;
-			return new ContextElements(array);
+			return contexts.v(array);
 		}
 
 		@Override
@@ -260,11 +367,12 @@ public class ContextSensPTA extends PTA {
 				} else
 					array[1] = (ContextElement) context;
 			}
-			return new ContextElements(array);
+			return contexts.v(array);
 		}
 	}
 	
 	protected ContextGenerator cxtGen;
+	protected final ContextTable contexts = new ContextTable();
 	protected int k, hk;
 	
 	protected Context heapSelector(Alloc_Node alloc, Context context) {
@@ -276,24 +384,45 @@ public class ContextSensPTA extends PTA {
 	}
 
 	/// Context-sensitive points-to analysis
-	private Map<Var_Node, HashMap<Context, ContextVar_Node>> contextVarNodeMap = new HashMap<>(16000);
-	private Map<Alloc_Node, HashMap<Context, ContextAlloc_Node>> contextAllocNodeMap = new HashMap<>(6000);
-	private Map<SootMethod, HashMap<Context, ContextMethod>> contextMethodMap = new HashMap<>(6000);
-	private Map<MethodPAG, Set<Context>> addedContexts =new HashMap<>();
+	/** context-sensitive nodes and methods, keyed by (number of the base, context id) */
+	private LongHashMap<ContextVar_Node> contextVarNodeMap = new LongHashMap<>(160000);
+	private LongHashMap<ContextAlloc_Node> contextAllocNodeMap = new LongHashMap<>(60000);
+	private LongHashMap<ContextMethod> contextMethodMap = new LongHashMap<>(60000);
+	/** context-sensitive versions of every base var node, for getVarNodes */
+	private Map<Var_Node, List<ContextVar_Node>> contextVarNodes = new HashMap<>(16000);
+	private LongHashSet addedContexts = new LongHashSet();
+	/** number of contexts of each method, kept if contexts per method are capped */
+	private Map<SootMethod, int[]> contextsPerMethod = new HashMap<>();
+	/** methods which reached the cap, with the number of requests merged into their summary context */
+	private Map<SootMethod, int[]> cappedMethods = new HashMap<>();
+	/** call edges into summary contexts, made for the first merged request of each caller and call site */
+	private Set<List<Object>> mergedCallEdges = new HashSet<>();
 	protected Context emptyContext;
 
 	public Context emptyContext() {
 		return emptyContext;
 	}
 
-	public Map<Var_Node, HashMap<Context, ContextVar_Node>> getContextVarNodeMap() {
-		return contextVarNodeMap;
+	/** Returns the context-sensitive versions of base created so far. */
+	public List<ContextVar_Node> getContextVarNodes(Var_Node base) {
+		List<ContextVar_Node> ret = contextVarNodes.get(base);
+		return ret == null ? Collections.emptyList() : ret;
 	}
-	public Map<Alloc_Node, HashMap<Context, ContextAlloc_Node>> getContextAllocNodeMap(){
-		return contextAllocNodeMap;
+
+	private static long key(int number, Context context) {
+		if (!(context instanceof ContextElements))
+			throw new RuntimeException("context is not interned: " + context);
+		return ((long) number << 32) | ((ContextElements) context).getId();
 	}
-	public Map<SootMethod, HashMap<Context, ContextMethod>> getContextMethodMap() {
-		return contextMethodMap;
+
+	/** methods outside the Scene (e.g. fakeMain) have no number, give them negative ones */
+	private Map<SootMethod, Integer> unnumberedMethods = new HashMap<>();
+
+	private long key(SootMethod method, Context context) {
+		int number = method.getNumber();
+		if (number == 0)
+			number = unnumberedMethods.computeIfAbsent(method, m -> -1 - unnumberedMethods.size());
+		return key(number, context);
 	}
 
 	public ContextSensPTA(int k, int hk){
@@ -308,10 +437,12 @@ public class ContextSensPTA extends PTA {
 			cxtGen = new TypeSensCxtGenerator();
 		else if (PTAOptions.ptaPattern.isParamSens())
 			cxtGen = new ParamSensCxtGenerator();
+		else if (PTAOptions.ptaPattern.isParamPTSSens())
+			cxtGen = new ParamPTSSensCxtGenerator();
 		else
 			throw new RuntimeException("Unsupported context kind.");
 
-		emptyContext = new ContextElements(new ContextElement[k]);
+		emptyContext = contexts.v(new ContextElement[k]);
 	}
 	
 	@Override
@@ -329,10 +460,7 @@ public class ContextSensPTA extends PTA {
 	}
 	
 	protected void addToPAG(MethodPAG mpag, Context cxt) {
-		Set<Context> contexts = addedContexts.get(mpag);
-		if(contexts==null)
-			addedContexts.put(mpag, contexts=new HashSet<>());
-		if (!contexts.add(cxt))
+		if (!addedContexts.add(key(mpag.getMethod(), cxt)))
 			return;
 		for(QueueReader<GNode> reader = mpag.getInternalReader().clone();reader.hasNext();)
 			pag.addEdge(parameterize(reader.next(), cxt), parameterize(reader.next(), cxt));
@@ -370,52 +498,77 @@ public class ContextSensPTA extends PTA {
 
 	/** Finds the ContextVarNode for base variable value and context context, or returns null.*/
 	public ContextVar_Node findContextVarNode(Local baseValue, Context context) {
-		HashMap<Context, ContextVar_Node> contextMap = contextVarNodeMap.get(pag.findLocalVarNode(baseValue));
-		return contextMap == null ? null : contextMap.get(context);
+		LocalVar_Node base = pag.findLocalVarNode(baseValue);
+		return base == null ? null : contextVarNodeMap.get(key(base.getNumber(), context));
 	}
 	@Override
 	public Collection<Var_Node> getVarNodes(Local local) {
-		Map<?, ContextVar_Node> subMap=contextVarNodeMap.get(pag.findLocalVarNode(local));
-		if(subMap==null)
+		LocalVar_Node base = pag.findLocalVarNode(local);
+		if(base==null)
 			return Collections.emptySet();
-		Collection<Var_Node> ret=new HashSet<>();
-		ret.addAll(subMap.values());
-		return ret;
+		return new HashSet<>(getContextVarNodes(base));
 	}
 
 	/**Finds or creates the ContextVarNode for base variable base and context.*/
 	protected ContextVar_Node makeContextVarNode(Var_Node base, Context context) {
-		HashMap<Context, ContextVar_Node> contextMap = contextVarNodeMap.get(base);
-		if (contextMap == null)
-			contextVarNodeMap.put(base, contextMap = new HashMap<Context, ContextVar_Node>());
-		ContextVar_Node cxtVarNode = contextMap.get(context);
+		long key = key(base.getNumber(), context);
+		ContextVar_Node cxtVarNode = contextVarNodeMap.get(key);
 		if (cxtVarNode == null) {
-			contextMap.put(context, cxtVarNode = new ContextVar_Node(pag, base, context));
+			contextVarNodeMap.put(key, cxtVarNode = new ContextVar_Node(pag, base, context));
+			contextVarNodes.computeIfAbsent(base, k -> new ArrayList<>(2)).add(cxtVarNode);
 		}
 		return cxtVarNode;
 	}
 
 	/** Finds or creates the ContextAllocNode for base allocsite and context. */
 	protected ContextAlloc_Node makeContextAllocNode(Alloc_Node allocNode, Context context) {
-		ContextAlloc_Node contextAllocNode;
-		HashMap<Context, ContextAlloc_Node> contextMap = contextAllocNodeMap.get(allocNode);
-		if (contextMap == null)
-			contextAllocNodeMap.put(allocNode, contextMap = new HashMap<>());
-		contextAllocNode = contextMap.get(context);
+		long key = key(allocNode.getNumber(), context);
+		ContextAlloc_Node contextAllocNode = contextAllocNodeMap.get(key);
 		if (contextAllocNode == null) {
-			contextMap.put(context, contextAllocNode = new ContextAlloc_Node(pag, allocNode, context));
+			contextAllocNodeMap.put(key, contextAllocNode = new ContextAlloc_Node(pag, allocNode, context));
 		}
 		return contextAllocNode;
 	}
-	
+
+	/**
+	 * Returns context, or the summary context of method if context would be a
+	 * new one and method already has as many contexts as allowed by
+	 * PTAOptions.contextBudget. The empty context serves as summary context.
+	 */
+	protected Context budget(SootMethod method, Context context) {
+		if (PTAOptions.contextBudget <= 0 || contextMethodMap.get(key(method, context)) != null)
+			return context;
+		int[] count = contextsPerMethod.computeIfAbsent(method, m -> new int[1]);
+		if (count[0] < PTAOptions.contextBudget) {
+			count[0]++;
+			return context;
+		}
+		cappedMethods.computeIfAbsent(method, m -> new int[1])[0]++;
+		return emptyContext;
+	}
+
+	@Override
+	public void run() {
+		super.run();
+		if (PTAOptions.contextBudget <= 0)
+			return;
+		evaluator().addLine("#Capped methods (context budget)", cappedMethods.size());
+		if (cappedMethods.isEmpty())
+			return;
+		G.v().out.println("[PTA] " + cappedMethods.size() + " methods reached the context budget of "
+				+ PTAOptions.contextBudget + " (merged requests):");
+		cappedMethods.entrySet().stream()
+				.sorted((a, b) -> Integer.compare(b.getValue()[0], a.getValue()[0]))
+				.forEach(e -> G.v().out.println("\t" + e.getValue()[0] + "\t" + e.getKey()));
+	}
+
 	/** Finds or creates the ContextMethod for method and context. */
 	public ContextMethod makeContextMethod(Context context,SootMethod method) {
-		HashMap<Context, ContextMethod> contextMap = contextMethodMap.get(method);
-		if (contextMap == null)
-			contextMethodMap.put(method, contextMap = new HashMap<Context, ContextMethod>());
-		ContextMethod contextMethod = contextMap.get(context);
+		context = budget(method, context);
+		long key = key(method, context);
+		ContextMethod contextMethod = contextMethodMap.get(key);
 		if (contextMethod == null)
-			contextMap.put(context, contextMethod = new ContextMethod(context,method));
+			contextMethodMap.put(key, contextMethod = new ContextMethod(context,method));
 		return contextMethod;
 	}
 
@@ -445,10 +598,8 @@ public class ContextSensPTA extends PTA {
 				continue;
 			GNode argNode = srcnf.getNode(arg);
 			argNode = parameterize(argNode, srcContext);
-			argNode = argNode.getReplacement();
 			GNode parm = tgtnf.caseParm(i);
 			parm = parameterize(parm, tgtContext);
-			parm = parm.getReplacement();
 			pag.addEdge(argNode, parm);
 		}
 		if (s instanceof AssignStmt) {
@@ -456,10 +607,8 @@ public class ContextSensPTA extends PTA {
 			if (dest.getType() instanceof RefLikeType && tgtmtd.getReturnType()instanceof RefLikeType) {
 				GNode destNode = srcnf.getNode(dest);
 				destNode = parameterize(destNode, srcContext);
-				destNode = destNode.getReplacement();
 				GNode retNode = tgtnf.caseRet();
 				retNode = parameterize(retNode, tgtContext);
-				retNode = retNode.getReplacement();
 				pag.addEdge(retNode, destNode);
 			}
 		}
@@ -583,28 +732,31 @@ public class ContextSensPTA extends PTA {
 			InvokeExpr ie = stmt.getInvokeExpr();
 			SootMethod target = ie.getMethod();//直接得到calleeMethod？
 			Kind kind = Edge.ieToKind(ie);
-			p2set.forall(new PTSetVisitor() {
-				public final void visit(GNode n) {
-					addVirtualEdge(site.getO1(), stmt, target, kind, (Alloc_Node) n);
-				}
-			});
+			final ArrayNumberer<Alloc_Node> allocNodes = pag.getAllocNodeNumberer();
+			p2set.forEachNumber(number -> addVirtualEdge(site.getO1(), stmt, target, kind, allocNodes.get(number)));
 		}
 
 		@Override
 		protected void addVirtualEdge(MethodOrMethodContext caller, Unit callStmt, SootMethod callee, Kind kind, Alloc_Node receiverNode) {
 			MethodOrMethodContext container = caller;
-			Context tgtContext = selector(callee, container.context(), CallSite.v(callStmt),(ContextAlloc_Node) receiverNode);
+			Context selected = selector(callee, container.context(), CallSite.v(callStmt),(ContextAlloc_Node) receiverNode);
+			Context tgtContext = budget(callee, selected);
 			//ContextMethod cstarget = parameterize(callee, tgtContext);
-			HashMap<Context, ContextMethod> contextMap = contextMethodMap.get(callee);
-			if (contextMap == null)
-				contextMethodMap.put(callee, contextMap = new HashMap<Context, ContextMethod>());
-			ContextMethod cstarget = contextMap.get(tgtContext);
+			long key = key(callee, tgtContext);
+			ContextMethod cstarget = contextMethodMap.get(key);
 			if (cstarget == null){
-				contextMap.put(tgtContext, cstarget = new ContextMethod(tgtContext,callee));
+				contextMethodMap.put(key, cstarget = new ContextMethod(tgtContext,callee));
 
 				addCGEdge(container, callStmt, cstarget, kind);
-				GNode thisRef = getMethodPAG(callee).nodeFactory().caseThis().getReplacement();
-				thisRef = parameterize(thisRef, cstarget.context()).getReplacement();
+				GNode thisRef = getMethodPAG(callee).nodeFactory().caseThis();
+				thisRef = parameterize(thisRef, cstarget.context());
+				pag.addEdge(receiverNode, thisRef);
+			} else if (tgtContext != selected) {
+				// merged into the summary context, which must see every caller and receiver
+				if (mergedCallEdges.add(Arrays.asList(container, callStmt, cstarget)))
+					addCGEdge(container, callStmt, cstarget, kind);
+				GNode thisRef = getMethodPAG(callee).nodeFactory().caseThis();
+				thisRef = parameterize(thisRef, cstarget.context());
 				pag.addEdge(receiverNode, thisRef);
 			}
 
@@ -612,18 +764,18 @@ public class ContextSensPTA extends PTA {
 
 		@Override
 		public void addStaticEdge(MethodOrMethodContext caller, Unit callStmt, SootMethod callee, Kind kind) {
-			Context tgtContext = selector(callee, caller.context(), CallSite.v(callStmt), null);
+			Context selected = selector(callee, caller.context(), CallSite.v(callStmt), null);
+			Context tgtContext = budget(callee, selected);
 			//ContextMethod callee = parameterize(calleem, typeContext);
 
-			HashMap<Context, ContextMethod> contextMap = contextMethodMap.get(callee);
-			if (contextMap == null)
-				contextMethodMap.put(callee, contextMap = new HashMap<Context, ContextMethod>());
-			ContextMethod contextMethod = contextMap.get(tgtContext);
+			long key = key(callee, tgtContext);
+			ContextMethod contextMethod = contextMethodMap.get(key);
 			if (contextMethod == null) {
-				contextMap.put(tgtContext, contextMethod = new ContextMethod(tgtContext, callee));
+				contextMethodMap.put(key, contextMethod = new ContextMethod(tgtContext, callee));
 
 				addCGEdge(caller, callStmt, contextMethod, kind);
-			}
+			} else if (tgtContext != selected && mergedCallEdges.add(Arrays.asList(caller, callStmt, contextMethod)))
+				addCGEdge(caller, callStmt, contextMethod, kind);
 		}
 	}
 
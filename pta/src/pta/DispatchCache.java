@@ -0,0 +1,102 @@
+/* Java and Android Analysis Framework
+ * Copyright (C) 2017 Jingbo Lu and Yulei Sui
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package pta;
+
+import soot.AnySubType;
+import soot.ArrayType;
+import soot.FastHierarchy;
+import soot.RefType;
+import soot.Scene;
+import soot.SootMethod;
+import soot.Type;
+import soot.jimple.toolkits.callgraph.VirtualCalls;
+import soot.util.NumberedString;
+import soot.util.queue.ChunkedQueue;
+import util.LongHashMap;
+
+/**
+ * Cache of virtual dispatch results keyed by (type number, subsignature
+ * number), which holds the resolved method or a marker for no target. The
+ * table is shared by all analyses on the same Scene, e.g. a pre-analysis and
+ * its main analysis; hits and lookups are counted per instance. It is not
+ * thread-safe, like VirtualCalls, which resolves its misses: all lookups come
+ * from the call graph builder on the solver thread.
+ */
+public class DispatchCache {
+	private static final Object NO_TARGET = new Object();
+	private static Scene scene;
+	private static LongHashMap<Object> sharedTargets;
+
+	private final LongHashMap<Object> targets;
+	private long lookups = 0, hits = 0;
+
+	public DispatchCache() {
+		synchronized (DispatchCache.class) {
+			if (scene != Scene.v()) {
+				scene = Scene.v();
+				sharedTargets = new LongHashMap<>();
+			}
+			targets = sharedTargets;
+		}
+	}
+
+	/**
+	 * Adds the targets of a virtual call of subSig on an object of type to
+	 * queue, exactly as VirtualCalls.resolve does; only AnySubType receivers
+	 * are not cached.
+	 */
+	public void resolve(Type type, Type declaredType, NumberedString subSig, SootMethod container,
+			ChunkedQueue<SootMethod> queue) {
+		if (type instanceof AnySubType) {
+			VirtualCalls.v().resolve(type, declaredType, subSig, container, queue);
+			return;
+		}
+		if (declaredType instanceof ArrayType)
+			declaredType = RefType.v("java.lang.Object");
+		if (type instanceof ArrayType)
+			type = RefType.v("java.lang.Object");
+		FastHierarchy fh = Scene.v().getOrMakeFastHierarchy();
+		if (declaredType != null && !fh.canStoreType(type, declaredType))
+			return;
+		if (!(type instanceof RefType)) {
+			VirtualCalls.v().resolve(type, declaredType, subSig, container, queue);
+			return;
+		}
+		lookups++;
+		long key = ((long) type.getNumber() << 32) | subSig.getNumber();
+		Object target = targets.get(key);
+		if (target != null)
+			hits++;
+		else {
+			target = VirtualCalls.v().resolveNonSpecial((RefType) type, subSig);
+			targets.put(key, target == null ? NO_TARGET : target);
+		}
+		if (target instanceof SootMethod)
+			queue.add((SootMethod) target);
+	}
+
+	public long getLookups() {
+		return lookups;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+}
@@ -19,6 +19,7 @@
 
 package pta;
 
+import driver.PTAOptions;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -67,6 +68,14 @@ public abstract class EagleContextSensPTA extends ContextSensPTA{
 	
 	@Override
 	public void run(){
+		SelectionCache cache = PTAOptions.selectionCache == null ? null : new SelectionCache(PTAOptions.selectionCache);
+		if (cache != null && cache.load(CSNodes, CSMethods)) {
+			System.out.println("Selection loaded from " + cache + ", pre-analysis skipped.");
+			System.out.println("selective cs-pta starts!");
+			super.run();
+			return;
+		}
+		
 		// Perform Andersen's analysis 
 		long time = System.currentTimeMillis();
 		prePTA = new PTA();
@@ -92,6 +101,9 @@ public abstract class EagleContextSensPTA extends ContextSensPTA{
 		System.out.println("Select time:" + (System.currentTimeMillis() - time)/1000 +"s");
 		extraStats();
 		
+		if (cache != null && cache.save(prePAG, CSNodes, CSMethods))
+			System.out.println("Selection saved to " + cache);
+		
 		// Perform Eagle-Guided k-obj, i.e., ek-obj
 		
 		System.out.println("selective cs-pta starts!");
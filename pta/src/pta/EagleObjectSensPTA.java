@@ -19,9 +19,11 @@
 
 package pta;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -34,6 +36,7 @@ import pag.node.var.FieldRef_Node;
 import pag.node.var.LocalVar_Node;
 import pag.node.var.Var_Node;
 import pta.eagle.EagleTransGraph;
+import pta.eagle.TransEdgeBuffer;
 import pta.pts.PTSetInternal;
 import pta.pts.PTSetVisitor;
 import soot.RefLikeType;
@@ -80,124 +83,18 @@ public class EagleObjectSensPTA extends EagleContextSensPTA{
 		if(PTAOptions.staticcontext != PTAOptions.EMPTY)
 			addStaticThis();
 		
+		// Walk the methods in parallel; all nodes the walk looks up are created beforehand
+		List<SootMethod> methods = new ArrayList<>();
 		prePTA.getCgb().getReachableMethods().listener().forEachRemaining(momc->{
 			SootMethod method =(SootMethod) momc;
 			if (method.isPhantom())
 				return;
-			MethodPAG srcmpag = prePTA.getMethodPAG(method);
-			MtdPAGBuilder srcnf = srcmpag.nodeFactory();
-			QueueReader<GNode> reader = srcmpag.getInternalReader().clone();
-			while (reader.hasNext()){
-				GNode from=reader.next(), to=reader.next();
-				if(from instanceof LocalVar_Node){
-					if(to instanceof LocalVar_Node)
-						eagleTransGraph.addAssignEdge((LocalVar_Node) from, (LocalVar_Node)to);
-					else if(to instanceof FieldRef_Node){
-						FieldRef_Node fr = (FieldRef_Node) to;
-						eagleTransGraph.addStoreEdge((LocalVar_Node)from, (LocalVar_Node) fr.getBase());
-					}//else//local-global
-				}else if(from instanceof Alloc_Node)
-					eagleTransGraph.addNewEdge((Alloc_Node)from, (LocalVar_Node) to);
-				else if (from instanceof FieldRef_Node){
-					FieldRef_Node fr = (FieldRef_Node) from;
-					eagleTransGraph.addAssignEdge((LocalVar_Node) fr.getBase(), (LocalVar_Node)to);
-				}//else//global-local
-			}
-			
-			LocalVar_Node thisRef = (LocalVar_Node) srcnf.caseThis();
-			int numParms = method.getParameterCount();
-			Var_Node[] parms = new Var_Node[numParms];
-			for (int i = 0; i < numParms; i++) {
-				if (method.getParameterType(i) instanceof RefLikeType)
-					parms[i]=(Var_Node) srcnf.caseParm(i);
-			}
-			Var_Node mret=method.getReturnType()instanceof RefLikeType?(Var_Node) srcnf.caseRet():null;
-			
-			if(method.isStatic()){
-				if(PTAOptions.staticcontext != PTAOptions.EMPTY)
-					getPTS(thisRef).forEach(a->{
-						eagleTransGraph.addHloadEdge(a, thisRef);
-						for (int i = 0; i < numParms; i++) {
-							if (parms[i]!=null)
-								eagleTransGraph.addHloadEdge(a, parms[i]);
-						}
-						if (mret!=null)
-							eagleTransGraph.addHstoreEdge(mret,a);
-					});
-			}else{
-				thisRef.getP2Set().forall(new PTSetVisitor() {
-					@Override
-					public void visit(GNode n) {
-						Alloc_Node a = (Alloc_Node) n;
-						eagleTransGraph.addHloadEdge(a, thisRef);
-						for (int i = 0; i < numParms; i++) {
-							if (parms[i]!=null)
-								eagleTransGraph.addHloadEdge(a, parms[i]);
-						}
-						if (mret!=null)
-							eagleTransGraph.addHstoreEdge(mret,a);
-					}
-				});
-			}
-			for (final Unit u : srcmpag.invokeStmts) {
-				final Stmt s = (Stmt) u;
-				
-				InvokeExpr ie = s.getInvokeExpr();
-				int numArgs = ie.getArgCount();
-				Value[] args = new Value[numArgs];
-				for (int i = 0; i < numArgs; i++) {
-					Value arg = ie.getArg(i);
-					if (!(arg.getType() instanceof RefLikeType) || arg instanceof NullConstant)
-						continue;
-					args[i]=arg;
-				}
-				LocalVar_Node retDest=null;
-				if (s instanceof AssignStmt) {
-					Value dest = ((AssignStmt) s).getLeftOp();
-					if (dest.getType() instanceof RefLikeType)
-						retDest=prePAG.findLocalVarNode(dest);
-				}
-				LocalVar_Node receiver=null;
-				if (ie instanceof InstanceInvokeExpr) {
-					InstanceInvokeExpr iie = (InstanceInvokeExpr) ie;
-					receiver = prePAG.findLocalVarNode(iie.getBase());
-				}else{//static call
-					if(PTAOptions.staticcontext != PTAOptions.EMPTY)
-						receiver=thisRef;
-				}
-				for(Iterator<Edge> it=prePTA.getCallGraph().edgesOutOf(u);it.hasNext();){
-					Edge e=it.next();
-					SootMethod tgtmtd=e.tgt();
-					MethodPAG tgtmpag = prePTA.getMethodPAG(tgtmtd);
-					MtdPAGBuilder tgtnf = tgtmpag.nodeFactory();
-					for (int i = 0; i < numArgs; i++) {
-						if (args[i]==null||!(tgtmtd.getParameterType(i) instanceof RefLikeType))
-							continue;
-						Var_Node parm = (Var_Node)tgtnf.caseParm(i);
-						Var_Node argNode = prePAG.findVarNode(args[i]);
-						if (argNode instanceof LocalVar_Node) {
-							if(receiver==null){//static call in empty context
-								if(PTAOptions.staticcontext != PTAOptions.EMPTY)
-									eagleTransGraph.addAssignEdge((LocalVar_Node) argNode, (LocalVar_Node)parm);
-							}
-							else
-								eagleTransGraph.addStoreEdge((LocalVar_Node) argNode, receiver);
-						}
-					}
-					if (retDest!=null&&tgtmtd.getReturnType()instanceof RefLikeType) {
-						LocalVar_Node ret = (LocalVar_Node)tgtnf.caseRet();
-						if(receiver==null){
-							if(PTAOptions.staticcontext != PTAOptions.EMPTY)
-								eagleTransGraph.addAssignEdge(ret, retDest);
-						}
-						else
-							eagleTransGraph.addAssignEdge(receiver, retDest);
-					}
-					if(receiver!=null)
-						eagleTransGraph.addStoreEdge(receiver, receiver);//do not move this out of loop
-				}
-			}
+			methods.add(method);
+			prepareTransEdges(method);
 		});
+		for (TransEdgeBuffer buffer : TransEdgeBuffer.gather(methods, this::gatherTransEdges))
+			buffer.replay(eagleTransGraph);
+		interProcNodes.clear();
 		
 		prePAG.getAllocNodes().forEach(a->{
 			a.getAllFieldRefs().forEach(odf->{
@@ -210,6 +107,158 @@ public class EagleObjectSensPTA extends EagleContextSensPTA{
 		});
 	}
 	
+	/**
+	 * this, parameter and return nodes of the pre-analysis PAG by method, with
+	 * null for non-reference ones; filled before the parallel walk, which thus
+	 * reads them without going through the PAG's lock.
+	 */
+	private final Map<SootMethod, Var_Node[]> interProcNodes = new HashMap<>();
+
+	/**
+	 * Creates the nodes of the pre-analysis PAG which gatherTransEdges looks up,
+	 * so that it only reads shared state.
+	 */
+	private void prepareTransEdges(SootMethod method) {
+		MethodPAG srcmpag = prePTA.getMethodPAG(method);
+		LocalVar_Node thisRef = (LocalVar_Node) srcmpag.nodeFactory().caseThis();
+		if(method.isStatic()&&PTAOptions.staticcontext != PTAOptions.EMPTY)
+			getPTS(thisRef);
+		makeParmsAndRet(method)[0] = thisRef;
+		for (final Unit u : srcmpag.invokeStmts)
+			for(Iterator<Edge> it=prePTA.getCallGraph().edgesOutOf(u);it.hasNext();)
+				makeParmsAndRet(it.next().tgt());
+	}
+
+	/** Nodes of method: this at 0, parameter i at i+1, the return value last. */
+	private Var_Node[] makeParmsAndRet(SootMethod method) {
+		return interProcNodes.computeIfAbsent(method, m -> {
+			MtdPAGBuilder nf = prePTA.getMethodPAG(m).nodeFactory();
+			int numParms = m.getParameterCount();
+			Var_Node[] ret = new Var_Node[numParms + 2];
+			for (int i = 0; i < numParms; i++)
+				if (m.getParameterType(i) instanceof RefLikeType)
+					ret[i + 1] = (Var_Node) nf.caseParm(i);
+			if (m.getReturnType() instanceof RefLikeType)
+				ret[numParms + 1] = (Var_Node) nf.caseRet();
+			return ret;
+		});
+	}
+
+	/** Gathers the edges of G_{R-pag} contributed by one method. */
+	private TransEdgeBuffer gatherTransEdges(SootMethod method) {
+		TransEdgeBuffer edges = new TransEdgeBuffer();
+		MethodPAG srcmpag = prePTA.getMethodPAG(method);
+		QueueReader<GNode> reader = srcmpag.getInternalReader().clone();
+		while (reader.hasNext()){
+			GNode from=reader.next(), to=reader.next();
+			if(from instanceof LocalVar_Node){
+				if(to instanceof LocalVar_Node)
+					edges.addAssignEdge((LocalVar_Node) from, (LocalVar_Node)to);
+				else if(to instanceof FieldRef_Node){
+					FieldRef_Node fr = (FieldRef_Node) to;
+					edges.addStoreEdge((LocalVar_Node)from, (LocalVar_Node) fr.getBase());
+				}//else//local-global
+			}else if(from instanceof Alloc_Node)
+				edges.addNewEdge((Alloc_Node)from, (LocalVar_Node) to);
+			else if (from instanceof FieldRef_Node){
+				FieldRef_Node fr = (FieldRef_Node) from;
+				edges.addAssignEdge((LocalVar_Node) fr.getBase(), (LocalVar_Node)to);
+			}//else//global-local
+		}
+		
+		Var_Node[] nodes = interProcNodes.get(method);
+		LocalVar_Node thisRef = (LocalVar_Node) nodes[0];
+		int numParms = method.getParameterCount();
+		Var_Node[] parms = new Var_Node[numParms];
+		System.arraycopy(nodes, 1, parms, 0, numParms);
+		Var_Node mret = nodes[numParms + 1];
+		
+		if(method.isStatic()){
+			if(PTAOptions.staticcontext != PTAOptions.EMPTY)
+				getPTS(thisRef).forEach(a->{
+					edges.addHloadEdge(a, thisRef);
+					for (int i = 0; i < numParms; i++) {
+						if (parms[i]!=null)
+							edges.addHloadEdge(a, parms[i]);
+					}
+					if (mret!=null)
+						edges.addHstoreEdge(mret,a);
+				});
+		}else{
+			thisRef.getP2Set().forall(new PTSetVisitor() {
+				@Override
+				public void visit(GNode n) {
+					Alloc_Node a = (Alloc_Node) n;
+					edges.addHloadEdge(a, thisRef);
+					for (int i = 0; i < numParms; i++) {
+						if (parms[i]!=null)
+							edges.addHloadEdge(a, parms[i]);
+					}
+					if (mret!=null)
+						edges.addHstoreEdge(mret,a);
+				}
+			});
+		}
+		for (final Unit u : srcmpag.invokeStmts) {
+			final Stmt s = (Stmt) u;
+			
+			InvokeExpr ie = s.getInvokeExpr();
+			int numArgs = ie.getArgCount();
+			Value[] args = new Value[numArgs];
+			for (int i = 0; i < numArgs; i++) {
+				Value arg = ie.getArg(i);
+				if (!(arg.getType() instanceof RefLikeType) || arg instanceof NullConstant)
+					continue;
+				args[i]=arg;
+			}
+			LocalVar_Node retDest=null;
+			if (s instanceof AssignStmt) {
+				Value dest = ((AssignStmt) s).getLeftOp();
+				if (dest.getType() instanceof RefLikeType)
+					retDest=prePAG.findLocalVarNode(dest);
+			}
+			LocalVar_Node receiver=null;
+			if (ie instanceof InstanceInvokeExpr) {
+				InstanceInvokeExpr iie = (InstanceInvokeExpr) ie;
+				receiver = prePAG.findLocalVarNode(iie.getBase());
+			}else{//static call
+				if(PTAOptions.staticcontext != PTAOptions.EMPTY)
+					receiver=thisRef;
+			}
+			for(Iterator<Edge> it=prePTA.getCallGraph().edgesOutOf(u);it.hasNext();){
+				Edge e=it.next();
+				SootMethod tgtmtd=e.tgt();
+				Var_Node[] tgtNodes = interProcNodes.get(tgtmtd);
+				for (int i = 0; i < numArgs; i++) {
+					if (args[i]==null||!(tgtmtd.getParameterType(i) instanceof RefLikeType))
+						continue;
+					Var_Node parm = tgtNodes[i + 1];
+					Var_Node argNode = prePAG.findVarNode(args[i]);
+					if (argNode instanceof LocalVar_Node) {
+						if(receiver==null){//static call in empty context
+							if(PTAOptions.staticcontext != PTAOptions.EMPTY)
+								edges.addAssignEdge((LocalVar_Node) argNode, (LocalVar_Node)parm);
+						}
+						else
+							edges.addStoreEdge((LocalVar_Node) argNode, receiver);
+					}
+				}
+				if (retDest!=null&&tgtmtd.getReturnType()instanceof RefLikeType) {
+					LocalVar_Node ret = (LocalVar_Node) tgtNodes[tgtNodes.length - 1];
+					if(receiver==null){
+						if(PTAOptions.staticcontext != PTAOptions.EMPTY)
+							edges.addAssignEdge(ret, retDest);
+					}
+					else
+						edges.addAssignEdge(receiver, retDest);
+				}
+				if(receiver!=null)
+					edges.addStoreEdge(receiver, receiver);//do not move this out of loop
+			}
+		}
+		return edges;
+	}
+
 	private void addStaticThis() {
 		pts=new HashMap<>();
 		Set<SootMethod> workList = new HashSet<>();
@@ -0,0 +1,175 @@
+/* Java and Android Analysis Framework
+ * Copyright (C) 2017 Jingbo Lu and Yulei Sui
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package pta;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import soot.Local;
+import soot.RefType;
+import soot.Scene;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.ClassConstant;
+import soot.jimple.Expr;
+import soot.jimple.StringConstant;
+import soot.jimple.spark.pag.ArrayElement;
+import soot.jimple.spark.pag.Parm;
+import soot.toolkits.scalar.Pair;
+
+/**
+ * Binary encoding of the IR objects PAG nodes stand for, relative to their
+ * method: locals by name, expressions by the positions of their unit and
+ * value box in the body, constants and fields by value. The positions of a
+ * method are computed once per codec, so a codec must not be shared between
+ * threads.
+ */
+class IRCodec {
+	private static final byte LOCAL = 0, EXPR = 1, PARM = 2, METHOD = 3, FIELD = 4, ARRAY = 5, STRING = 6,
+			INTEGER = 7, PAIR = 8, REFTYPE = 9, STRINGCONST = 10, CLASSCONST = 11;
+
+	/** per method: units of the body, the unit and box index of every value in it, and its locals by name */
+	private final Map<SootMethod, List<Unit>> units = new HashMap<>();
+	private final Map<SootMethod, Map<Value, int[]>> positions = new HashMap<>();
+	private final Map<SootMethod, Map<String, Local>> locals = new HashMap<>();
+
+	void write(DataOutput out, Object ir, SootMethod m) throws IOException {
+		if (ir instanceof Local) {
+			out.writeByte(LOCAL);
+			out.writeUTF(((Local) ir).getName());
+		} else if (ir instanceof Expr) {
+			int[] pos = positions(m).get(ir);
+			if (pos == null)
+				throw new RuntimeException("cannot find " + ir + " in " + m);
+			out.writeByte(EXPR);
+			out.writeInt(pos[0]);
+			out.writeInt(pos[1]);
+		} else if (ir instanceof Parm) {
+			out.writeByte(PARM);
+			out.writeInt(((Parm) ir).getIndex());
+		} else if (ir instanceof SootMethod) {
+			out.writeByte(METHOD);
+			out.writeUTF(((SootMethod) ir).getSignature());
+		} else if (ir instanceof SootField) {
+			out.writeByte(FIELD);
+			out.writeUTF(((SootField) ir).getSignature());
+		} else if (ir instanceof ArrayElement) {
+			out.writeByte(ARRAY);
+		} else if (ir instanceof String) {
+			out.writeByte(STRING);
+			out.writeUTF((String) ir);
+		} else if (ir instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) ir);
+		} else if (ir instanceof Pair) {
+			out.writeByte(PAIR);
+			write(out, ((Pair<?, ?>) ir).getO1(), m);
+			write(out, ((Pair<?, ?>) ir).getO2(), m);
+		} else if (ir instanceof RefType) {
+			out.writeByte(REFTYPE);
+			out.writeUTF(((RefType) ir).getClassName());
+		} else if (ir instanceof StringConstant) {
+			out.writeByte(STRINGCONST);
+			out.writeUTF(((StringConstant) ir).value);
+		} else if (ir instanceof ClassConstant) {
+			out.writeByte(CLASSCONST);
+			out.writeUTF(((ClassConstant) ir).value);
+		} else
+			throw new RuntimeException("cannot encode " + ir + " of " + ir.getClass());
+	}
+
+	Object read(DataInput in, SootMethod m) throws IOException {
+		switch (in.readByte()) {
+		case LOCAL:
+			String name = in.readUTF();
+			Local l = locals(m).get(name);
+			if (l == null)
+				throw new RuntimeException("no local " + name + " in " + m);
+			return l;
+		case EXPR:
+			int unit = in.readInt(), box = in.readInt();
+			return units(m).get(unit).getUseAndDefBoxes().get(box).getValue();
+		case PARM:
+			return Parm.v(m, in.readInt());
+		case METHOD:
+			return Scene.v().getMethod(in.readUTF());
+		case FIELD:
+			return Scene.v().getField(in.readUTF());
+		case ARRAY:
+			return ArrayElement.v();
+		case STRING:
+			return in.readUTF();
+		case INTEGER:
+			return in.readInt();
+		case PAIR:
+			Object o1 = read(in, m);
+			return new Pair<>(o1, read(in, m));
+		case REFTYPE:
+			return RefType.v(in.readUTF());
+		case STRINGCONST:
+			return StringConstant.v(in.readUTF());
+		case CLASSCONST:
+			return ClassConstant.v(in.readUTF());
+		default:
+			throw new RuntimeException("corrupt IR encoding");
+		}
+	}
+
+	List<Unit> units(SootMethod m) {
+		List<Unit> ret = units.get(m);
+		if (ret == null)
+			units.put(m, ret = new ArrayList<>(m.retrieveActiveBody().getUnits()));
+		return ret;
+	}
+
+	private Map<Value, int[]> positions(SootMethod m) {
+		Map<Value, int[]> ret = positions.get(m);
+		if (ret == null) {
+			positions.put(m, ret = new IdentityHashMap<>());
+			List<Unit> body = units(m);
+			for (int i = 0; i < body.size(); i++) {
+				List<ValueBox> boxes = body.get(i).getUseAndDefBoxes();
+				for (int j = 0; j < boxes.size(); j++)
+					ret.putIfAbsent(boxes.get(j).getValue(), new int[] { i, j });
+			}
+		}
+		return ret;
+	}
+
+	private Map<String, Local> locals(SootMethod m) {
+		Map<String, Local> ret = locals.get(m);
+		if (ret == null) {
+			locals.put(m, ret = new HashMap<>());
+			for (Local l : m.retrieveActiveBody().getLocals())
+				ret.putIfAbsent(l.getName(), l);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,560 @@
+/* Java and Android Analysis Framework
+ * Copyright (C) 2017 Jingbo Lu and Yulei Sui
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+package pta;
+
+import static driver.PTAOptions.sparkOpts;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import driver.PTAOptions;
+import pag.MethodPAG;
+import pag.PAG;
+import pag.builder.MtdPAGBuilder;
+import pag.node.GNode;
+import pag.node.alloc.Alloc_Node;
+import pag.node.var.FieldRef_Node;
+import pag.node.var.GlobalVar_Node;
+import pag.node.var.LocalVar_Node;
+import pag.node.var.Var_Node;
+import soot.Body;
+import soot.FoundFile;
+import soot.PhaseOptions;
+import soot.PointsToAnalysis;
+import soot.RefLikeType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.SourceLocator;
+import soot.Type;
+import soot.Unit;
+import soot.jimple.ClassConstant;
+import soot.jimple.Constant;
+import soot.jimple.Stmt;
+import soot.jimple.StringConstant;
+import soot.jimple.spark.pag.Parm;
+import soot.jimple.spark.pag.SparkField;
+import soot.toolkits.scalar.Pair;
+import soot.util.queue.QueueReader;
+
+/**
+ * On-disk cache of the statement part of method PAGs of library classes:
+ * the internal edges made from the statements of a method, its invoke
+ * statements and the classes it needs initialized. There is one file per
+ * class file, named after a hash of its contents and of the options the
+ * fragments depend on, which holds the fragment of each method keyed by its
+ * signature. Files are memory-mapped when a method of their class is first
+ * built, and fragments built in a run are written back by {@link #flush()}.
+ *
+ * Nodes are stored by kind and IR object (see {@link IRCodec}), and created
+ * again through the PAG and the method's builder, so that a fragment gives
+ * the same nodes and edges as building the statements would. The method
+ * body is still loaded, since nodes stand for its locals and expressions.
+ */
+public final class PAGFragmentCache {
+	private static final int MAGIC = 0x50414731; // "PAG1"
+	private static final byte LOCALVAR = 0, GLOBALVAR = 1, ALLOC = 2, FIELDREF = 3, THIS = 4, PARM = 5, THROW = 6,
+			CONSTLOCAL = 7, CONSTGLOBAL = 8;
+	/** fragments of a class without a class file, which are neither read nor written */
+	private static final Fragments NONE = new Fragments(null, null, Collections.emptyMap());
+	private static PAGFragmentCache instance;
+
+	/**
+	 * Returns the cache in the directory PTAOptions.pagCache; null if there is
+	 * none, or if reflection or the Spark options change how nodes are keyed.
+	 */
+	public static PAGFragmentCache v() {
+		if (PTAOptions.pagCache == null || PTAOptions.REFLECTION_LOG != null || sparkOpts.rta() || sparkOpts.vta()
+				|| sparkOpts.types_for_sites())
+			return null;
+		synchronized (PAGFragmentCache.class) {
+			File dir = new File(PTAOptions.pagCache);
+			if (instance == null || !instance.dir.equals(dir))
+				instance = new PAGFragmentCache(dir);
+			return instance;
+		}
+	}
+
+	private final File dir;
+	/** the format and the options the fragments depend on, hashed into every file name */
+	private final byte[] optionsKey;
+	private final Map<SootClass, Fragments> classes = new HashMap<>();
+	/** fragments built in this run, by class and method signature, not written yet */
+	private final Map<SootClass, Map<String, byte[]>> pending = new HashMap<>();
+	private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+	private PAGFragmentCache(File dir) {
+		this.dir = dir;
+		String options = MAGIC + ";clinit=" + PTAOptions.clinit + ";empties=" + sparkOpts.empties_as_allocs()
+				+ ";fieldbased=" + sparkOpts.field_based() + ";jb="
+				+ new TreeMap<>(PhaseOptions.v().getPhaseOptions("jb"));
+		try {
+			optionsKey = options.getBytes("UTF-8");
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	private static boolean cacheable(SootMethod m) {
+		return m.isConcrete() && !m.isNative() && m.getDeclaringClass().isLibraryClass();
+	}
+
+	// ======================replay===========================
+	/**
+	 * Adds the cached statement part of the PAG of mpag's method to mpag;
+	 * returns false, having changed nothing, if there is no usable fragment.
+	 */
+	public boolean replay(MethodPAG mpag) {
+		SootMethod m = mpag.getMethod();
+		if (!cacheable(m))
+			return false;
+		Fragments f = fragments(m.getDeclaringClass());
+		int[] pos = f.index.get(m.getSignature());
+		if (pos == null) {
+			misses.increment();
+			return false;
+		}
+		Fragment fragment;
+		// decoding looks types, Parms and members up in soot's unsynchronized
+		// tables, which PAGs built on other threads use as well
+		try {
+			ByteBuffer data = f.data.duplicate();
+			data.position(pos[0]);
+			synchronized (mpag.pag()) {
+				fragment = read(new DataInputStream(new BufferInput(data)), m);
+			}
+		} catch (IOException | RuntimeException e) {
+			fragment = null;
+		}
+		if (fragment == null) {
+			misses.increment();
+			return false;
+		}
+		fragment.addTo(mpag);
+		hits.increment();
+		return true;
+	}
+
+	/** A decoded fragment, all of whose IR objects have been found in the body. */
+	private static final class Fragment {
+		final Node[] nodes;
+		final int[] edges;
+		final List<Stmt> invokeStmts;
+		final List<SootClass> clinitClasses;
+
+		Fragment(Node[] nodes, int[] edges, List<Stmt> invokeStmts, List<SootClass> clinitClasses) {
+			this.nodes = nodes;
+			this.edges = edges;
+			this.invokeStmts = invokeStmts;
+			this.clinitClasses = clinitClasses;
+		}
+
+		void addTo(MethodPAG mpag) {
+			final GNode[] made = new GNode[nodes.length];
+			for (int i = 0; i < nodes.length; i++)
+				made[i] = nodes[i].make(mpag, made);
+			for (int i = 0; i < edges.length; i += 2)
+				mpag.addInternalEdge(made[edges[i]], made[edges[i + 1]]);
+			mpag.invokeStmts.addAll(invokeStmts);
+			mpag.nodeFactory().clinitclasses.addAll(clinitClasses);
+		}
+	}
+
+	/** A node of a fragment: its kind, IR object and type, or base node and field. */
+	private static final class Node {
+		final byte kind;
+		final Object ir;
+		final Type type;
+		final int base;
+
+		Node(byte kind, Object ir, Type type, int base) {
+			this.kind = kind;
+			this.ir = ir;
+			this.type = type;
+			this.base = base;
+		}
+
+		GNode make(MethodPAG mpag, GNode[] made) {
+			final PAG pag = mpag.pag();
+			final MtdPAGBuilder nf = mpag.nodeFactory();
+			final SootMethod m = mpag.getMethod();
+			switch (kind) {
+			case LOCALVAR:
+				return pag.makeLocalVarNode(ir, type, m);
+			case GLOBALVAR:
+				return pag.makeGlobalVarNode(ir, type);
+			case ALLOC:
+				return pag.makeAllocNode(ir, type, m);
+			case FIELDREF:
+				return pag.makeFieldRefNode((Var_Node) made[base], (SparkField) ir);
+			case THIS:
+				return nf.caseThis();
+			case PARM:
+				int index = (Integer) ir;
+				return index == PointsToAnalysis.RETURN_NODE ? nf.caseRet() : nf.caseParm(index);
+			case THROW:
+				return pag.GlobalNodeFactory().caseThrow();
+			case CONSTLOCAL:
+				// the edge from the constant's global node is replayed with the others
+				nf.makeConstantGlobal((Constant) ir);
+				return nf.makeConstantLocal((Constant) ir);
+			case CONSTGLOBAL:
+				return nf.makeConstantGlobal((Constant) ir);
+			default:
+				throw new RuntimeException("unknown node kind " + kind);
+			}
+		}
+	}
+
+	private Fragment read(DataInputStream in, SootMethod m) throws IOException {
+		Body body = m.retrieveActiveBody();
+		if (in.readInt() != body.getUnits().size() || in.readInt() != body.getLocalCount())
+			return null; // the body has changed, e.g. with the Soot version
+		IRCodec codec = new IRCodec();
+		Node[] nodes = new Node[in.readInt()];
+		for (int i = 0; i < nodes.length; i++) {
+			byte kind = in.readByte();
+			switch (kind) {
+			case LOCALVAR:
+			case GLOBALVAR:
+			case ALLOC:
+			case CONSTGLOBAL:
+				Object ir = codec.read(in, m);
+				nodes[i] = new Node(kind, ir, readType(in), -1);
+				break;
+			case FIELDREF:
+				int base = in.readInt();
+				nodes[i] = new Node(kind, codec.read(in, m), null, base);
+				break;
+			case PARM:
+				nodes[i] = new Node(kind, in.readInt(), null, -1);
+				break;
+			case CONSTLOCAL:
+				nodes[i] = new Node(kind, codec.read(in, m), null, -1);
+				break;
+			default:
+				nodes[i] = new Node(kind, null, null, -1);
+			}
+		}
+		int[] edges = new int[in.readInt() * 2];
+		for (int i = 0; i < edges.length; i++)
+			edges[i] = in.readInt();
+		List<Unit> units = codec.units(m);
+		List<Stmt> invokeStmts = new ArrayList<>();
+		for (int i = in.readInt(); i > 0; i--)
+			invokeStmts.add((Stmt) units.get(in.readInt()));
+		List<SootClass> clinitClasses = new ArrayList<>();
+		for (int i = in.readInt(); i > 0; i--) {
+			String name = in.readUTF();
+			SootClass cl = Scene.v().getSootClassUnsafe(name);
+			if (cl == null)
+				throw new RuntimeException("no class " + name);
+			clinitClasses.add(cl);
+		}
+		return new Fragment(nodes, edges, invokeStmts, clinitClasses);
+	}
+
+	private static Type readType(DataInputStream in) throws IOException {
+		String name = in.readUTF();
+		Type ret = Scene.v().getTypeUnsafe(name);
+		if (ret == null)
+			throw new RuntimeException("no type " + name);
+		return ret;
+	}
+
+	// ======================record===========================
+	/**
+	 * Records the fragment of mpag's method, whose statements have just been
+	 * built; edges reads the internal edges they added.
+	 */
+	public void record(MethodPAG mpag, QueueReader<GNode> edges) {
+		SootMethod m = mpag.getMethod();
+		if (!cacheable(m) || fragments(m.getDeclaringClass()) == NONE)
+			return;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			new Encoder(m).write(new DataOutputStream(bytes), mpag, edges);
+		} catch (IOException | RuntimeException e) {
+			return; // methods with nodes that cannot be encoded are built every time
+		}
+		synchronized (this) {
+			pending.computeIfAbsent(m.getDeclaringClass(), k -> new HashMap<>()).put(m.getSignature(),
+					bytes.toByteArray());
+		}
+	}
+
+	/** Encodes the fragment of one method; nodes are numbered in order of first use. */
+	private static final class Encoder {
+		final SootMethod m;
+		final IRCodec codec = new IRCodec();
+		final Map<GNode, Integer> ids = new HashMap<>();
+		final ByteArrayOutputStream nodeBytes = new ByteArrayOutputStream();
+		final DataOutputStream nodes = new DataOutputStream(nodeBytes);
+
+		Encoder(SootMethod m) {
+			this.m = m;
+		}
+
+		void write(DataOutputStream out, MethodPAG mpag, QueueReader<GNode> edges) throws IOException {
+			List<Integer> edgeIds = new ArrayList<>();
+			while (edges.hasNext())
+				edgeIds.add(id(edges.next()));
+			Body body = m.retrieveActiveBody();
+			out.writeInt(body.getUnits().size());
+			out.writeInt(body.getLocalCount());
+			out.writeInt(ids.size());
+			nodeBytes.writeTo(out);
+			out.writeInt(edgeIds.size() / 2);
+			for (int id : edgeIds)
+				out.writeInt(id);
+			Map<Unit, Integer> unitIndex = new IdentityHashMap<>();
+			List<Unit> units = codec.units(m);
+			for (int i = 0; i < units.size(); i++)
+				unitIndex.put(units.get(i), i);
+			out.writeInt(mpag.invokeStmts.size());
+			for (Stmt s : mpag.invokeStmts) {
+				Integer index = unitIndex.get(s);
+				if (index == null)
+					throw new RuntimeException(s + " is not in the body of " + m);
+				out.writeInt(index);
+			}
+			out.writeInt(mpag.nodeFactory().clinitclasses.size());
+			for (SootClass cl : mpag.nodeFactory().clinitclasses)
+				out.writeUTF(cl.getName());
+		}
+
+		private int id(GNode n) throws IOException {
+			Integer ret = ids.get(n);
+			if (ret != null)
+				return ret;
+			if (n instanceof FieldRef_Node) {
+				FieldRef_Node fr = (FieldRef_Node) n;
+				int base = id(fr.getBase());
+				nodes.writeByte(FIELDREF);
+				nodes.writeInt(base);
+				codec.write(nodes, fr.getField(), m);
+			} else if (n.getClass() == LocalVar_Node.class) {
+				Object v = ((LocalVar_Node) n).getVariable();
+				Object o1 = v instanceof Pair ? ((Pair<?, ?>) v).getO1() : null;
+				Object o2 = v instanceof Pair ? ((Pair<?, ?>) v).getO2() : null;
+				if (v instanceof Parm) {
+					nodes.writeByte(PARM);
+					nodes.writeInt(((Parm) v).getIndex());
+				} else if (o1 == m && PointsToAnalysis.THIS_NODE.equals(o2)) {
+					nodes.writeByte(THIS);
+				} else if (o1 == m && (o2 instanceof StringConstant || o2 instanceof ClassConstant)) {
+					nodes.writeByte(CONSTLOCAL);
+					codec.write(nodes, o2, m);
+				} else {
+					nodes.writeByte(LOCALVAR);
+					codec.write(nodes, v, m);
+					writeType(n.getType());
+				}
+			} else if (n.getClass() == GlobalVar_Node.class) {
+				Object v = ((GlobalVar_Node) n).getVariable();
+				if (PointsToAnalysis.EXCEPTION_NODE.equals(v)) {
+					nodes.writeByte(THROW);
+				} else {
+					nodes.writeByte(v instanceof StringConstant || v instanceof ClassConstant ? CONSTGLOBAL : GLOBALVAR);
+					codec.write(nodes, v, m);
+					writeType(n.getType());
+				}
+			} else if (n.getClass() == Alloc_Node.class) {
+				nodes.writeByte(ALLOC);
+				codec.write(nodes, ((Alloc_Node) n).getNewExpr(), m);
+				writeType(n.getType());
+			} else
+				throw new RuntimeException("cannot encode " + n);
+			ids.put(n, ret = ids.size());
+			return ret;
+		}
+
+		private void writeType(Type type) throws IOException {
+			if (!(type instanceof RefLikeType))
+				throw new RuntimeException("cannot encode type " + type);
+			nodes.writeUTF(type.toString());
+		}
+	}
+
+	// ======================files===========================
+	/** The fragments stored for one class file. */
+	private static final class Fragments {
+		final File file;
+		/** the mapped file, null if there is none yet */
+		final ByteBuffer data;
+		/** offset and length of the fragment of each method signature in data */
+		final Map<String, int[]> index;
+
+		Fragments(File file, ByteBuffer data, Map<String, int[]> index) {
+			this.file = file;
+			this.data = data;
+			this.index = index;
+		}
+	}
+
+	private synchronized Fragments fragments(SootClass cl) {
+		Fragments ret = classes.get(cl);
+		if (ret == null)
+			classes.put(cl, ret = open(cl));
+		return ret;
+	}
+
+	/** Finds the class file of cl and maps the fragment file named after it, if there is one. */
+	private Fragments open(SootClass cl) {
+		FoundFile classFile = SourceLocator.v().lookupInClassPath(cl.getName().replace('.', '/') + ".class");
+		if (classFile == null)
+			return NONE;
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			md.update(optionsKey);
+			try (InputStream in = classFile.inputStream()) {
+				byte[] buf = new byte[1 << 14];
+				for (int n; (n = in.read(buf)) > 0;)
+					md.update(buf, 0, n);
+			} finally {
+				classFile.close();
+			}
+			StringBuilder name = new StringBuilder();
+			for (byte b : md.digest())
+				name.append(String.format("%02x", b));
+			File file = new File(dir, name + ".pagf");
+			if (!file.isFile())
+				return new Fragments(file, null, Collections.emptyMap());
+			try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				ByteBuffer data = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+				return new Fragments(file, data, readIndex(data.duplicate()));
+			}
+		} catch (IOException | NoSuchAlgorithmException | RuntimeException e) {
+			System.out.println("Ignoring PAG fragments of " + cl + ": " + e);
+			return NONE;
+		}
+	}
+
+	private static Map<String, int[]> readIndex(ByteBuffer data) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferInput(data));
+		if (in.readInt() != MAGIC)
+			throw new IOException("not a PAG fragment file");
+		Map<String, int[]> ret = new HashMap<>();
+		for (int i = in.readInt(); i > 0; i--) {
+			String sig = in.readUTF();
+			int length = in.readInt();
+			ret.put(sig, new int[] { data.position(), length });
+			data.position(data.position() + length);
+		}
+		return ret;
+	}
+
+	/** Writes the fragments built in this run, merged with those already stored for their classes. */
+	public synchronized void flush() {
+		for (Map.Entry<SootClass, Map<String, byte[]>> e : pending.entrySet()) {
+			Fragments f = classes.remove(e.getKey());
+			try {
+				write(f, e.getValue());
+			} catch (IOException | RuntimeException ex) {
+				System.out.println("PAG fragments of " + e.getKey() + " not cached: " + ex);
+			}
+		}
+		pending.clear();
+	}
+
+	private void write(Fragments f, Map<String, byte[]> added) throws IOException {
+		Map<String, byte[]> all = new TreeMap<>();
+		for (Map.Entry<String, int[]> e : f.index.entrySet()) {
+			byte[] fragment = new byte[e.getValue()[1]];
+			ByteBuffer data = f.data.duplicate();
+			data.position(e.getValue()[0]);
+			data.get(fragment);
+			all.put(e.getKey(), fragment);
+		}
+		all.putAll(added);
+		dir.mkdirs();
+		File tmp = File.createTempFile("pagf", ".tmp", dir);
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(all.size());
+				for (Map.Entry<String, byte[]> e : all.entrySet()) {
+					out.writeUTF(e.getKey());
+					out.writeInt(e.getValue().length);
+					out.write(e.getValue());
+				}
+			}
+			Files.move(tmp.toPath(), f.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	/** Reads a byte buffer as a stream, without copying it. */
+	private static final class BufferInput extends InputStream {
+		private final ByteBuffer data;
+
+		BufferInput(ByteBuffer data) {
+			this.data = data;
+		}
+
+		@Override
+		public int read() {
+			return data.hasRemaining() ? data.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+			if (!data.hasRemaining())
+				return -1;
+			len = Math.min(len, data.remaining());
+			data.get(b, off, len);
+			return len;
+		}
+	}
+}
@@ -37,6 +37,7 @@ import reflection.DefaultReflectionModel;
 import reflection.ReflectionModel;
 import reflection.TraceBasedReflectionModel;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -46,6 +47,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import driver.Config;
 import driver.FakeMainFactory;
@@ -84,6 +88,7 @@ import soot.jimple.toolkits.callgraph.VirtualCalls;
 import soot.options.CGOptions;
 import soot.options.Options;
 import soot.options.SparkOptions;
+import soot.util.ArrayNumberer;
 import soot.util.NumberedString;
 import soot.util.queue.ChunkedQueue;
 import soot.util.queue.QueueReader;
@@ -98,6 +103,13 @@ public class PTA implements PointsToAnalysis {
 	protected QueueReader<Edge> callEdges;
 	protected static HashMap<SootMethod, Collection<Stmt>> methodToStmts = new HashMap<>();
 	protected HashMap<SootMethod, MethodPAG> methodToPag = new HashMap<>();
+	/** below this number of new methods their PAGs are built one by one by getMethodPAG */
+	private static final int PARALLEL_PAG_THRESHOLD = 16;
+	/** reads the reachable methods ahead of reachablesReader; null unless PAGs are built in parallel */
+	private QueueReader<MethodOrMethodContext> pagReader;
+	private int parallelPAGs = 0;
+	/** workers of all parallel phases, see workers() */
+	private static ForkJoinPool workers;
 	protected PTAEvaluator evaluator;
 	
 	public PTAEvaluator evaluator() {
@@ -165,6 +177,16 @@ public class PTA implements PointsToAnalysis {
 		getPropagator().propagate();
 		Date endProp = new Date();
 		reportTime("Points-to resolution:", startProp, endProp);
+		evaluator.addLine("#Dispatch cache (hits/lookups)", cgb.dispatchCache.getHits() + "/" + cgb.dispatchCache.getLookups());
+		PAGFragmentCache pagCache = PAGFragmentCache.v();
+		if (pagCache != null) {
+			pagCache.flush();
+			evaluator.addLine("#PAG fragment cache (hits/misses)", pagCache.getHits() + "/" + pagCache.getMisses());
+		}
+		if (pagReader != null) {
+			pagReader = null;
+			evaluator.addLine("#Method PAGs built in parallel", parallelPAGs);
+		}
 
 		if (!sparkOpts.on_fly_cg() || sparkOpts.vta()) {
 			soot.jimple.toolkits.callgraph.CallGraphBuilder cicgb = new soot.jimple.toolkits.callgraph.CallGraphBuilder(
@@ -177,6 +199,8 @@ public class PTA implements PointsToAnalysis {
 	}
 
 	protected Propagator getPropagator(){
+		if (PTAOptions.solver == PTAOptions.PARALLEL)
+			return new pta.solver.ParallelSolver(this);
 		return new pta.solver.Solver(this);
 	}
 
@@ -210,6 +234,8 @@ public class PTA implements PointsToAnalysis {
 				if(!reachablesReader.hasNext())
 					break;
 			}
+			if (PTAOptions.parallelPAG && PTAOptions.REFLECTION_LOG == null)
+				buildMethodPAGs();
 			MethodOrMethodContext momc = reachablesReader.next();
 			SootMethod method = momc.method();
 			if (method.isPhantom())
@@ -227,6 +253,60 @@ public class PTA implements PointsToAnalysis {
 		callEdges.forEachRemaining(e -> processCallEdge(e));
 	}
 	
+	/**
+	 * Builds the PAGs of all methods made reachable since the last call on a
+	 * pool of worker threads; their edges are still added to the PAG one
+	 * method at a time by build(). Bodies are loaded, and the soot objects the
+	 * builders would intern are created, on this thread first.
+	 * Native methods are left to getMethodPAG, as their models share state,
+	 * and so are small batches.
+	 */
+	private void buildMethodPAGs() {
+		if (pagReader == null)
+			pagReader = reachablesReader.clone();
+		if (!pagReader.hasNext())
+			return;
+		final List<SootMethod> todo = new ArrayList<>();
+		final Set<SootMethod> seen = new HashSet<>();
+		while (pagReader.hasNext()) {
+			SootMethod m = pagReader.next().method();
+			if (!m.isPhantom() && !m.isNative() && !methodToPag.containsKey(m) && seen.add(m))
+				todo.add(m);
+		}
+		if (todo.size() < PARALLEL_PAG_THRESHOLD)
+			return;
+		for (SootMethod m : todo) {
+			getMethodStmts(m);
+			MtdPAGBuilder.internSootObjects(m);
+		}
+		final List<MethodPAG> built;
+		try {
+			built = workers().submit(() -> todo.parallelStream().map(m -> new MethodPAG(pag, m))
+					.collect(Collectors.toList())).get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Parallel PAG construction failed", e);
+		}
+		for (int i = 0; i < todo.size(); i++)
+			methodToPag.put(todo.get(i), built.get(i));
+		parallelPAGs += todo.size();
+	}
+
+	/**
+	 * Pool of PTAOptions.threads workers shared by the parallel phases of all
+	 * analyses: method PAG construction, the parallel solver and the walks of
+	 * the Eagle and parameter pre-analyses. Its threads are daemons and are
+	 * kept between phases.
+	 */
+	public static synchronized ForkJoinPool workers() {
+		final int threads = Math.max(1, PTAOptions.threads);
+		if (workers == null || workers.getParallelism() != threads) {
+			if (workers != null)
+				workers.shutdown();
+			workers = new ForkJoinPool(threads);
+		}
+		return workers;
+	}
+
 	void updateClinits(Collection<Stmt> added) {
 		cgb.handleInvoke(FakeMainFactory.getFakeMain(), added);
 	}
@@ -571,6 +651,7 @@ public class PTA implements PointsToAnalysis {
 		protected ChunkedQueue<VirtualInvokeSite> edgeQueue = new ChunkedQueue<>();
 		protected final ChunkedQueue<SootMethod> targetsQueue = new ChunkedQueue<SootMethod>();
 		protected final QueueReader<SootMethod> targets = targetsQueue.reader();
+		protected final DispatchCache dispatchCache = new DispatchCache();
 		
 		public CallGraph getCallGraph() {
 			return cg;
@@ -640,12 +721,12 @@ public class PTA implements PointsToAnalysis {
 				if (target != null)
 					targetsQueue.add(target);
 			} else
-				VirtualCalls.v().resolve(type, site.recNode().getType(), site.subSig(), container.method(), targetsQueue);
+				dispatchCache.resolve(type, site.recNode().getType(), site.subSig(), container.method(), targetsQueue);
 		}
 
 		protected void addVirtualEdge(MethodOrMethodContext caller, Unit callStmt, SootMethod callee, Kind kind, Alloc_Node receiverNode) {
 			addCGEdge(caller, callStmt, callee, kind);
-			GNode thisRef = getMethodPAG(callee).nodeFactory().caseThis().getReplacement();
+			GNode thisRef = getMethodPAG(callee).nodeFactory().caseThis();
 			pag.addEdge(receiverNode, thisRef);
 		}
 
@@ -735,16 +816,15 @@ public class PTA implements PointsToAnalysis {
 //		}
 
 		public void updateCallGraph(PTSetInternal p2set, VirtualInvokeSite site) {
-			p2set.forall(new PTSetVisitor() {
-				public final void visit(GNode n) {
-					Alloc_Node receiverNode = (Alloc_Node) n;
-					dispatch(receiverNode.getType(), site);
-					while (targets.hasNext())
-						addVirtualEdge(site.container(), site.stmt(), targets.next(), site.kind(), receiverNode);
-					// if (targets.hasNext())
-					// throw new RuntimeException("multiple targets for one dynamic
-					// type!!");
-				}
+			final ArrayNumberer<Alloc_Node> allocNodes = pag.getAllocNodeNumberer();
+			p2set.forEachNumber(number -> {
+				Alloc_Node receiverNode = allocNodes.get(number);
+				dispatch(receiverNode.getType(), site);
+				while (targets.hasNext())
+					addVirtualEdge(site.container(), site.stmt(), targets.next(), site.kind(), receiverNode);
+				// if (targets.hasNext())
+				// throw new RuntimeException("multiple targets for one dynamic
+				// type!!");
 			});
 			reflectionModel.updateNode(site.recNode(), p2set);
 		}
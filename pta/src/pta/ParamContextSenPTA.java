@@ -1,5 +1,6 @@
 package pta;
 
+import driver.PTAOptions;
 import pag.MethodPAG;
 import pag.PAG;
 import pag.node.GNode;
@@ -35,6 +36,14 @@ public abstract class ParamContextSenPTA extends ContextSensPTA{
     }
 
     public void run(){
+        SelectionCache cache = PTAOptions.selectionCache == null ? null : new SelectionCache(PTAOptions.selectionCache);
+        if (cache != null && cache.load(CSNodes, CSMethods)) {
+            System.out.println("Selection loaded from " + cache + ", pre-analysis skipped.");
+            System.out.println("paramsen-pta starts!");
+            super.run();
+            return;
+        }
+
         // Perform Andersen's analysis
         long time = System.currentTimeMillis();
         prePTA = new PTA();
@@ -60,6 +69,9 @@ public abstract class ParamContextSenPTA extends ContextSensPTA{
         System.out.println("Select time:" + (System.currentTimeMillis() - time)/1000 +"s");
         extraStats();
 
+        if (cache != null && cache.save(prePAG, CSNodes, CSMethods))
+            System.out.println("Selection saved to " + cache);
+
         // Perform Eagle-Guided k-obj, i.e., ek-obj
 
         System.out.println("paramsen-pta starts!");
@@ -0,0 +1,204 @@
+/* Java and Android Analysis Framework
+ * Copyright (C) 2017 Jingbo Lu and Yulei Sui
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package pta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+
+import driver.PTAOptions;
+import pag.PAG;
+import pag.node.GNode;
+import pag.node.alloc.Alloc_Node;
+import pag.node.var.LocalVar_Node;
+import pag.node.var.Var_Node;
+import soot.Scene;
+import soot.SootMethod;
+import soot.toolkits.scalar.Pair;
+
+/**
+ * Persists the context selection of a selective analysis, so that later runs
+ * on the same classpath with the same options can skip the pre-analysis. The
+ * file is named after a hash of the contents of all classpath entries, the
+ * reflection log and the values of {@link PTAOptions}.
+ *
+ * Selected nodes are stored by the IR objects they stand for, relative to
+ * their method: locals by name, expressions by the positions of their unit
+ * and value box in the body, constants and fields by value. Nodes whose IR
+ * refers to a node of the pre-analysis PAG are dropped, as they cannot be
+ * equal to any IR object of the main analysis anyway. If any other selected
+ * node cannot be encoded, no file is written.
+ */
+class SelectionCache {
+	private static final int MAGIC = 0x53454C31; // "SEL1"
+
+	private final File file;
+	private final IRCodec codec = new IRCodec();
+
+	SelectionCache(String dir) {
+		file = new File(dir, key() + ".sel");
+	}
+
+	@Override
+	public String toString() {
+		return file.toString();
+	}
+
+	/** Reads the selection into CSNodes and CSMethods; returns false if there is no usable file. */
+	boolean load(Set<Object> CSNodes, Set<SootMethod> CSMethods) {
+		if (!file.isFile())
+			return false;
+		try (DataInputStream in = new DataInputStream(new GZIPInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC)
+				return false;
+			List<Object> nodes = new ArrayList<>();
+			for (int i = in.readInt(); i > 0; i--) {
+				String sig = in.readUTF();
+				nodes.add(codec.read(in, sig.isEmpty() ? null : Scene.v().getMethod(sig)));
+			}
+			List<SootMethod> methods = new ArrayList<>();
+			for (int i = in.readInt(); i > 0; i--)
+				methods.add(Scene.v().getMethod(in.readUTF()));
+			CSNodes.addAll(nodes);
+			CSMethods.addAll(methods);
+			return true;
+		} catch (IOException | RuntimeException e) {
+			System.out.println("Ignoring unreadable selection cache " + file + ": " + e);
+			return false;
+		}
+	}
+
+	/** Writes the selection made on prePAG; returns false if it could not be stored. */
+	boolean save(PAG prePAG, Set<Object> CSNodes, Set<SootMethod> CSMethods) {
+		Map<Object, SootMethod> methodOf = new HashMap<>();
+		for (Var_Node vn : prePAG.getVarNodeNumberer())
+			if (vn instanceof LocalVar_Node)
+				methodOf.put(vn.getVariable(), ((LocalVar_Node) vn).getMethod());
+		for (Alloc_Node an : prePAG.getAllocNodeNumberer())
+			methodOf.putIfAbsent(an.getNewExpr(), an.getMethod());
+
+		ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+		int count = 0;
+		try {
+			for (Object ir : CSNodes) {
+				if (refersToNode(ir))
+					continue;
+				SootMethod m = methodOf.get(ir);
+				DataOutputStream out = new DataOutputStream(nodes);
+				out.writeUTF(m == null ? "" : m.getSignature());
+				codec.write(out, ir, m);
+				count++;
+			}
+			file.getParentFile().mkdirs();
+			try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(file)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(count);
+				nodes.writeTo(out);
+				out.writeInt(CSMethods.size());
+				for (SootMethod m : CSMethods)
+					out.writeUTF(m.getSignature());
+			}
+			return true;
+		} catch (IOException | RuntimeException e) {
+			System.out.println("Selection not cached: " + e);
+			file.delete();
+			return false;
+		}
+	}
+
+	// ======================IR encoding===========================
+	private static boolean refersToNode(Object ir) {
+		if (ir instanceof GNode)
+			return true;
+		if (ir instanceof Pair)
+			return refersToNode(((Pair<?, ?>) ir).getO1()) || refersToNode(((Pair<?, ?>) ir).getO2());
+		return false;
+	}
+
+	// ======================cache key===========================
+	/** Hash of the classpath contents, the reflection log and the analysis options. */
+	private static String key() {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			List<File> files = new ArrayList<>();
+			for (String entry : Scene.v().getSootClassPath().split(File.pathSeparator))
+				files.addAll(contents(new File(entry)));
+			if (PTAOptions.REFLECTION_LOG != null)
+				files.add(new File(PTAOptions.REFLECTION_LOG));
+			byte[] buf = new byte[1 << 16];
+			for (File f : files) {
+				md.update(f.getPath().getBytes("UTF-8"));
+				if (!f.isFile())
+					continue;
+				try (InputStream in = new FileInputStream(f)) {
+					for (int n; (n = in.read(buf)) > 0;)
+						md.update(buf, 0, n);
+				}
+			}
+			Field[] fields = PTAOptions.class.getFields();
+			Arrays.sort(fields, Comparator.comparing(Field::getName));
+			for (Field f : fields) {
+				int mod = f.getModifiers();
+				if (!Modifier.isStatic(mod) || Modifier.isFinal(mod) || f.getName().equals("selectionCache")
+						|| f.getName().equals("pagCache")
+						|| f.getName().equals("sceneSnapshot") || f.getName().equals("threads"))
+					continue;
+				md.update((f.getName() + "=" + f.get(null) + ";").getBytes("UTF-8"));
+			}
+			StringBuilder ret = new StringBuilder();
+			for (byte b : md.digest())
+				ret.append(String.format("%02x", b));
+			return ret.toString();
+		} catch (IOException | NoSuchAlgorithmException | IllegalAccessException e) {
+			throw new RuntimeException("Cannot compute the selection cache key", e);
+		}
+	}
+
+	/** The files of a classpath entry, in a fixed order. */
+	private static List<File> contents(File entry) {
+		List<File> ret = new ArrayList<>();
+		if (entry.isDirectory()) {
+			ret.addAll(FileUtils.listFiles(entry, null, true));
+			ret.sort(Comparator.comparing(File::getPath));
+		} else
+			ret.add(entry);
+		return ret;
+	}
+}
@@ -12,24 +12,31 @@ import soot.Unit;
 public class CallSite implements ContextElement {
 
 	private Unit unit;
+	/** dense number of this call site, starting from 1 */
+	private final int number;
 
 	private static Map<Unit, CallSite> universe = new HashMap<Unit, CallSite>();
 
 	public static CallSite v(Unit unit) {
 		CallSite ret = universe.get(unit);
 		if (ret == null)
-			universe.put(unit, ret = new CallSite(unit));
+			universe.put(unit, ret = new CallSite(unit, universe.size() + 1));
 		return ret;
 	}
 
-	private CallSite(Unit unit) {
+	private CallSite(Unit unit, int number) {
 		this.unit = unit;
+		this.number = number;
 	}
 
 	public Unit getUnit() {
 		return unit;
 	}
 
+	public int getNumber() {
+		return number;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
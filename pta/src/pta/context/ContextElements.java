@@ -1,11 +1,16 @@
 package pta.context;
 
-import java.util.Arrays;
-
 import soot.Context;
 
+/**
+ * A context, i.e. a sequence of context elements. Contexts are hash-consed by
+ * a {@link ContextTable}, which numbers them densely, so that they are
+ * compared by identity and hashed by their number.
+ */
 public class ContextElements implements Context {
-	private ContextElement[] array;
+	private final ContextElement[] array;
+	private final int numContextElements;
+	private final int id;
 
 	public ContextElement[] getElements() {
 		return array;
@@ -15,23 +20,33 @@ public class ContextElements implements Context {
 		return array.length;
 	}
 
-	public ContextElements(ContextElement[] array) {
+	ContextElements(ContextElement[] array, int numContextElements, int id) {
 		this.array = array;
+		this.numContextElements = numContextElements;
+		this.id = id;
+	}
+
+	public int getId() {
+		return id;
 	}
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(array);
+		return id;
 	}
 
 	/**
 	 * Return the number of non-null or non-No-Context elements, assuming that
 	 * in the array once we see a no-context element, we don't see a context
 	 * element.
-	 * 
+	 *
 	 * @return
 	 */
 	public int numContextElements() {
+		return numContextElements;
+	}
+
+	static int numContextElements(ContextElement[] array) {
 		for (int i = 0; i < array.length; i++) {
 			if (array[i] == null)
 				return i;
@@ -40,33 +55,14 @@ public class ContextElements implements Context {
 		return array.length;
 	}
 
+	/**
+	 * Contexts are interned, so two contexts with the same elements are the
+	 * same object; arrays of different sizes which represent the same
+	 * context-sensitive heap object are mapped to the same context.
+	 */
 	@Override
 	public boolean equals(Object obj) {
-		if (this == obj)
-			return true;
-		if (getClass() != obj.getClass())
-			return false;
-		ContextElements other = (ContextElements) obj;
-
-		// if (!Arrays.equals(array, other.array)) return false;
-
-		// custom array equals for context
-		// allows for checking of different sized arrays, but represent same
-		// context-sensitive heap object
-		if (this.array == null || other.array == null)
-			return false;
-
-		if (this.numContextElements() != other.numContextElements())
-			return false;
-
-		for (int i = 0; i < numContextElements(); i++) {
-			Object o1 = this.array[i];
-			Object o2 = other.array[i];
-			if (!(o1 == null ? o2 == null : o1.equals(o2)))
-				return false;
-		}
-
-		return true;
+		return this == obj;
 	}
 
 	@Override
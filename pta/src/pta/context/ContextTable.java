@@ -0,0 +1,42 @@
+package pta.context;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash-consing table of the contexts of one analysis. {@link #v} returns one
+ * canonical {@link ContextElements} for every sequence of non-null elements
+ * and numbers the contexts densely in creation order. The table and the
+ * context elements it refers to are released with the analysis owning it.
+ */
+public class ContextTable {
+	private final Map<List<ContextElement>, ContextElements> universe = new HashMap<>();
+	private final List<ContextElements> contexts = new ArrayList<>();
+
+	public ContextElements v(ContextElement[] array) {
+		int n = ContextElements.numContextElements(array);
+		List<ContextElement> key = Arrays.asList(array);
+		if (n < array.length)
+			key = key.subList(0, n);
+		ContextElements ret = universe.get(key);
+		if (ret == null) {
+			ret = new ContextElements(array, n, contexts.size());
+			universe.put(Arrays.asList(Arrays.copyOf(array, n)), ret);
+			contexts.add(ret);
+		}
+		return ret;
+	}
+
+	/** Returns the context numbered id. */
+	public ContextElements get(int id) {
+		return contexts.get(id);
+	}
+
+	/** Number of contexts created so far. */
+	public int size() {
+		return contexts.size();
+	}
+}
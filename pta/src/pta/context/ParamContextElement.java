@@ -50,23 +50,14 @@ public class ParamContextElement implements ContextElement{
         return "ParamContextElement " + params;
     }*/
 
-    private static Map<Alloc_Node,Map<List<Value>,ParamContextElement>> universe = new HashMap<>();
+    /**
+     * Parameter context elements are interned per analysis by the parameter
+     * sensitive context generator of ContextSensPTA.
+     */
     public ParamContextElement(Alloc_Node base, List<Value> params){
         this.base = base;
         this.params = params;
     }
-    public static ParamContextElement v (Alloc_Node base,List<Value> params){
-        Map<List<Value>, ParamContextElement> recs = universe.get(base);
-        if(recs == null){
-            universe.put(base,recs = new HashMap<>());
-        }
-        ParamContextElement rec = recs.get(params);
-        if(rec == null){
-            recs.put(params,rec = new ParamContextElement(base,params));
-        }
-        universe.put(base,recs);
-        return rec;
-    }
     public int hashCode() {
         final int prime = 31;
         int result = 1;
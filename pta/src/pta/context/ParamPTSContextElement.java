@@ -0,0 +1,75 @@
+package pta.context;
+
+import java.util.Arrays;
+
+import pag.node.alloc.Alloc_Node;
+
+/**
+ * Parameter context element made of the receiver base and the points-to sets
+ * of the arguments at the time of the call. The sets are identified by a
+ * 64-bit fingerprint, the sum of a hash of every alloc number, and equal
+ * fingerprints are confirmed against the sorted alloc numbers of the sets, so
+ * that two different sets never share a context.
+ */
+public class ParamPTSContextElement implements ContextElement {
+
+    private final Alloc_Node base;
+    /** combination of the fingerprints of all arguments */
+    private final long fingerprint;
+    /** sorted alloc numbers of each argument, empty for non-reference arguments */
+    private final int[][] argPts;
+
+    /**
+     * Parameter context elements are interned per analysis by the parameter
+     * sensitive context generator of ContextSensPTA, which also owns argPts.
+     */
+    public ParamPTSContextElement(Alloc_Node base, long fingerprint, int[][] argPts) {
+        this.base = base;
+        this.fingerprint = fingerprint;
+        this.argPts = argPts;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /** Fingerprint of a sorted array of alloc numbers. */
+    public static long fingerprint(int[] numbers) {
+        long ret = 0;
+        for (int number : numbers)
+            ret += mix(number);
+        return ret;
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     * Returns true if this element stands for base and the given sorted alloc
+     * numbers of the arguments. The arrays of a set that did not change since
+     * the element was made are the same, and compare in constant time.
+     */
+    public boolean matches(Alloc_Node base, int[][] argPts) {
+        if (this.base != base || this.argPts.length != argPts.length)
+            return false;
+        for (int i = 0; i < argPts.length; i++)
+            if (!Arrays.equals(this.argPts[i], argPts[i]))
+                return false;
+        return true;
+    }
+
+    public int hashCode() {
+        return Long.hashCode(fingerprint);
+    }
+
+    public boolean equals(Object obj) {
+        return this == obj;
+    }
+
+    public String toString() {
+        return "ParamPTSContextElement " + base + " " + Long.toHexString(fingerprint);
+    }
+}
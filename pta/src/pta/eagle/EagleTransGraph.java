@@ -19,8 +19,12 @@
 
 package pta.eagle;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import pag.node.alloc.Alloc_Node;
@@ -28,108 +32,172 @@ import pag.node.var.LocalVar_Node;
 import pag.node.var.Var_Node;
 import soot.SootField;
 import soot.jimple.spark.pag.ArrayElement;
+import util.LongHashSet;
 
+/**
+ * The regularised PAG G_{R-pag}. BNodes are numbered densely in the order of
+ * their creation; every edge is kept once in the out-edge array of its source,
+ * packed with its context, and once as a pair of numbers in a hash set.
+ */
 public class EagleTransGraph{
 	
 	public Map<Object, Map<Boolean, BNode>> sparkNode2BNode=new HashMap<>();
+	/** all BNodes, indexed by their numbers */
+	private final List<BNode> nodes = new ArrayList<>();
+	/** every edge as (source number << 32 | target number) */
+	private final LongHashSet edges = new LongHashSet();
 	
 	BNode getNode(Object origin,Boolean forward){
 		Map<Boolean, BNode> subMap = sparkNode2BNode.get(origin);
 		if(subMap==null)
 			sparkNode2BNode.put(origin, subMap = new HashMap<>());
 		BNode ret = subMap.get(forward);
-		if(ret==null)
-			subMap.put(forward, ret=new BNode(origin,forward));
+		if(ret==null){
+			subMap.put(forward, ret=new BNode(origin,forward,nodes.size()));
+			nodes.add(ret);
+		}
 		return ret;
 	}
 	
-	protected Set<BNode> entrys = new HashSet<>();
+	/** Adds the edge from --> to with context ctx, returns false if there already is an edge from --> to. */
+	boolean addEdge(BNode from, BNode to, int ctx) {
+		if(!edges.add(((long) from.id << 32) | to.id))
+			return false;
+		from.addOutEdge(to.id, ctx);
+		return true;
+	}
+	
+	boolean hasEdge(BNode from, BNode to) {
+		return edges.contains(((long) from.id << 32) | to.id);
+	}
+	
+	/** numbers of the entry nodes */
+	protected BitSet entrys = new BitSet();
 	
 	// The following methods are used to create the edges in G_{R-pag} as described in the paper.
 	
 	public void addNewEdge(Alloc_Node from, LocalVar_Node to) {
 		BNode fromE = getNode(from,true),toE = getNode(to,true);
-		fromE.addOutEdge(toE,0);
+		addEdge(fromE, toE, 0);
 		BNode fromEI = getNode(from, false),toEI = getNode(to, false);
-		toEI.addOutEdge(fromEI, 0);
+		addEdge(toEI, fromEI, 0);
 	}
 	
 	public void addAssignEdge(LocalVar_Node from, LocalVar_Node to) {
 		BNode fromE =getNode(from,true),toE=getNode(to,true);
-		fromE.addOutEdge(toE, 0);
+		addEdge(fromE, toE, 0);
 		BNode fromEI =getNode(from,false),toEI=getNode(to,false);
-		toEI.addOutEdge(fromEI, 0);
+		addEdge(toEI, fromEI, 0);
 	}
 	
 	public void addStoreEdge(LocalVar_Node from, LocalVar_Node base) {
 		BNode fromE = getNode(from,true),baseEI=getNode(base,false);
-		fromE.addOutEdge(baseEI, 0);
+		addEdge(fromE, baseEI, 0);
 		BNode fromEI = getNode(from,false),baseE=getNode(base,true);
-		baseE.addOutEdge(fromEI, 0);
+		addEdge(baseE, fromEI, 0);
 	}
 	
 	public void addHstoreEdge(Object from, Alloc_Node baseObj) {
 		int ctx=-1;
 		BNode fromE = getNode(from,true),baseObjE=getNode(baseObj,true);
-		fromE.addOutEdge(baseObjE, ctx);
+		addEdge(fromE, baseObjE, ctx);
 		BNode fromEI = getNode(from,false),baseObjEI=getNode(baseObj,false);
-		baseObjEI.addOutEdge(fromEI, -ctx);
+		addEdge(baseObjEI, fromEI, -ctx);
 		
-		entrys.add(fromEI);
+		entrys.set(fromEI.id);
 	}
 	
 	public void addHloadEdge(Alloc_Node baseObj, Object to) {
 		int ctx=1;
 		BNode baseObjEI=getNode(baseObj,false),toE=getNode(to,true);
-		baseObjEI.addOutEdge(toE, ctx);
+		addEdge(baseObjEI, toE, ctx);
 		BNode baseObjE=getNode(baseObj,true),toEI=getNode(to,false);
-		toEI.addOutEdge(baseObjE, -ctx);
+		addEdge(toEI, baseObjE, -ctx);
 		
-		entrys.add(toE);
+		entrys.set(toE.id);
 	}
 
 	// Perform Eagle as a taint analysis according to the rules
 	
 	public void propagate(){
 		long time;
-		HashSet<BNode> workList=new HashSet<>();
+		IntQueue workList = new IntQueue(nodes.size());
 		
 		System.out.print("set all entry context sensitivity (and balanced) ...");
 		time = System.currentTimeMillis();
 		
 		//start from all "parameter/field" node
-		entrys.forEach(n->{
-			n.cs=true;
-			workList.add(n);
-		});
+		for (int i = entrys.nextSetBit(0); i >= 0; i = entrys.nextSetBit(i + 1)) {
+			nodes.get(i).cs=true;
+			workList.add(i);
+		}
 		
 		Set<Object> matchedObjects = new HashSet<>(); // Object which has a match edge
 		while(!workList.isEmpty()){
-			BNode node = workList.iterator().next();
-			workList.remove(node);
-			node.outEdges.forEach((o1,o2)->{
-					if(o2>=0){ // EntryCTx & Prop
-						if(o1.setCS()){
-							workList.add(o1);
-						}
-					}else{ //o2<0 ExitCtx
-						Alloc_Node receiverObj = (Alloc_Node) o1.sparkNode;
-						if(!(node.sparkNode instanceof SootField)&&!(node.sparkNode instanceof ArrayElement)||
-							getNode(receiverObj, false).outEdges.containsKey(node)
-								){
-							if(matchedObjects.add(receiverObj)){ //add match edges
-								BNode fromE = getNode(receiverObj,true),fromEI = getNode(receiverObj, false);
-								if(fromEI.addOutEdge(fromE,0)&&fromEI.cs){
-									workList.add(fromEI);//add src of the match edge to worklist
-								}
+			BNode node = nodes.get(workList.poll());
+			for (int e = 0; e < node.outSize; e++) {
+				final int edge = node.out[e];
+				final BNode o1 = nodes.get(edge >>> 2);
+				final int o2 = (edge & 3) - 1;
+				if(o2>=0){ // EntryCTx & Prop
+					if(o1.setCS()){
+						workList.add(o1.id);
+					}
+				}else{ //o2<0 ExitCtx
+					Alloc_Node receiverObj = (Alloc_Node) o1.sparkNode;
+					if(!(node.sparkNode instanceof SootField)&&!(node.sparkNode instanceof ArrayElement)||
+						hasEdge(getNode(receiverObj, false), node)
+							){
+						if(matchedObjects.add(receiverObj)){ //add match edges
+							BNode fromE = getNode(receiverObj,true),fromEI = getNode(receiverObj, false);
+							if(addEdge(fromEI, fromE, 0)&&fromEI.cs){
+								workList.add(fromEI.id);//add src of the match edge to worklist
 							}
 						}
 					}
-			});
+				}
+			}
 		}
 		System.out.println((System.currentTimeMillis() - time)/1000 +"s");
 	}
 	
+	/** FIFO of node numbers in a growable ring buffer; a number is queued at most once at a time. */
+	private static final class IntQueue {
+		private int[] elements;
+		private int head = 0, size = 0;
+		private final BitSet queued = new BitSet();
+		
+		IntQueue(int capacity) {
+			elements = new int[Math.max(16, capacity)];
+		}
+		
+		void add(int n) {
+			if (queued.get(n))
+				return;
+			queued.set(n);
+			if (size == elements.length) {
+				int[] grown = new int[elements.length << 1];
+				for (int i = 0; i < size; i++)
+					grown[i] = elements[(head + i) % elements.length];
+				elements = grown;
+				head = 0;
+			}
+			elements[(head + size++) % elements.length] = n;
+		}
+		
+		int poll() {
+			int n = elements[head];
+			head = (head + 1) % elements.length;
+			size--;
+			queued.clear(n);
+			return n;
+		}
+		
+		boolean isEmpty() {
+			return size == 0;
+		}
+	}
+	
 	// sparkNode * {+, -}
 	// The data structure used for representing every edge in G_{pag}
     // with an edge in G_{R-pag} with its node states explicitly given according to
@@ -138,19 +206,21 @@ public class EagleTransGraph{
 		public Object sparkNode;
 		public Boolean forward;
 		public boolean cs;
-		Map<BNode, Integer> outEdges = new HashMap<>();
+		final int id;
+		/** out-edges as (target number << 2 | (context + 1)) */
+		int[] out = new int[2];
+		int outSize = 0;
 
-		public boolean addOutEdge(BNode toE, int i) {
-			if(!outEdges.containsKey(toE)){
-				outEdges.put(toE, i);
-				return true;
-			}
-			return false;
+		void addOutEdge(int to, int ctx) {
+			if (outSize == out.length)
+				out = Arrays.copyOf(out, outSize << 1);
+			out[outSize++] = (to << 2) | (ctx + 1);
 		}
 		
-		BNode(Object origin, Boolean forward){
+		BNode(Object origin, Boolean forward, int id){
 			this.sparkNode=origin;
 			this.forward=forward;
+			this.id=id;
 		}
 		
 		boolean setCS(){
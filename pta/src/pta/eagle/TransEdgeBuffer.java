@@ -0,0 +1,114 @@
+/* Eagle-Guided Object-Sensitive Pointer Analysis
+ * Copyright (C) 2019 Jingbo Lu and Jingling Xue
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package pta.eagle;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import driver.PTAOptions;
+import pag.node.alloc.Alloc_Node;
+import pag.node.var.LocalVar_Node;
+import pta.PTA;
+
+/**
+ * Records the edges of G_{R-pag} found in one method, so that methods can be
+ * walked in parallel. Replaying the buffers of all methods in the order of the
+ * methods adds the edges to an {@link EagleTransGraph} exactly as a sequential
+ * walk would, which keeps the numbering of its nodes deterministic.
+ */
+public class TransEdgeBuffer {
+	private static final byte NEW = 0, ASSIGN = 1, STORE = 2, HSTORE = 3, HLOAD = 4;
+	private byte[] kinds = new byte[16];
+	/** the two end points of edge i are at 2i and 2i+1 */
+	private Object[] ends = new Object[32];
+	private int size = 0;
+
+	private void add(byte kind, Object from, Object to) {
+		if (size == kinds.length) {
+			kinds = Arrays.copyOf(kinds, size << 1);
+			ends = Arrays.copyOf(ends, size << 2);
+		}
+		kinds[size] = kind;
+		ends[size << 1] = from;
+		ends[(size << 1) + 1] = to;
+		size++;
+	}
+
+	public void addNewEdge(Alloc_Node from, LocalVar_Node to) {
+		add(NEW, from, to);
+	}
+
+	public void addAssignEdge(LocalVar_Node from, LocalVar_Node to) {
+		add(ASSIGN, from, to);
+	}
+
+	public void addStoreEdge(LocalVar_Node from, LocalVar_Node base) {
+		add(STORE, from, base);
+	}
+
+	public void addHstoreEdge(Object from, Alloc_Node baseObj) {
+		add(HSTORE, from, baseObj);
+	}
+
+	public void addHloadEdge(Alloc_Node baseObj, Object to) {
+		add(HLOAD, baseObj, to);
+	}
+
+	/** Adds the recorded edges to graph, in the order they were recorded. */
+	public void replay(EagleTransGraph graph) {
+		for (int i = 0; i < size; i++) {
+			Object from = ends[i << 1], to = ends[(i << 1) + 1];
+			switch (kinds[i]) {
+			case NEW:
+				graph.addNewEdge((Alloc_Node) from, (LocalVar_Node) to);
+				break;
+			case ASSIGN:
+				graph.addAssignEdge((LocalVar_Node) from, (LocalVar_Node) to);
+				break;
+			case STORE:
+				graph.addStoreEdge((LocalVar_Node) from, (LocalVar_Node) to);
+				break;
+			case HSTORE:
+				graph.addHstoreEdge(from, (Alloc_Node) to);
+				break;
+			default:
+				graph.addHloadEdge((Alloc_Node) from, to);
+			}
+		}
+	}
+
+	/**
+	 * Runs gather on every element of items on the workers of
+	 * {@link PTA#workers()} and returns the buffers in the order of items. gather must only
+	 * read shared state.
+	 */
+	public static <T> List<TransEdgeBuffer> gather(List<T> items, Function<T, TransEdgeBuffer> gather) {
+		if (PTAOptions.threads <= 1)
+			return items.stream().map(gather).collect(Collectors.toList());
+		try {
+			return PTA.workers().submit(() -> items.parallelStream().map(gather).collect(Collectors.toList())).get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Parallel construction of the transPAG failed", e);
+		}
+	}
+}
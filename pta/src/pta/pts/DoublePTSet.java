@@ -20,7 +20,9 @@
 package pta.pts;
 
 import java.util.*;
+import java.util.function.IntConsumer;
 
+import driver.PTAOptions;
 import pag.PAG;
 import pag.node.GNode;
 import soot.*;
@@ -30,11 +32,17 @@ import soot.*;
  * that have not yet been propagated, and the other for elements that have
  * already been propagated.
  * 
+ * With {@link PTAOptions#shareSets}, old sets are hash-consed in
+ * {@link SharedPTSets} by {@link #share()} once they have stopped changing,
+ * and copied should they grow again.
+ * 
  * @author Ondrej Lhotak
  */
 public class DoublePTSet extends PTSetInternal {
 	static PTSetFactory newSetFactory;
 	static PTSetFactory oldSetFactory;
+	/** table of shared old sets, null unless sets are shared */
+	static SharedPTSets sharedSets;
 
 	public DoublePTSet(Type type, PAG pag) {
 		super(type);
@@ -48,6 +56,11 @@ public class DoublePTSet extends PTSetInternal {
 		return oldSet.isEmpty() && newSet.isEmpty();
 	}
 
+	/** The new set never holds objects of the old set, so the sizes add up. */
+	public int size() {
+		return oldSet.size() + newSet.size();
+	}
+
 	/** Returns true if this set shares some objects with other. */
 	public boolean hasNonEmptyIntersection(PointsToSet other) {
 		return oldSet.hasNonEmptyIntersection(other) || newSet.hasNonEmptyIntersection(other);
@@ -78,6 +91,25 @@ public class DoublePTSet extends PTSetInternal {
 		return v.getReturnValue();
 	}
 
+	public void forEachNumber(IntConsumer action) {
+		oldSet.forEachNumber(action);
+		newSet.forEachNumber(action);
+	}
+
+	public boolean addEach(PTSetInternal other, PTSetInternal exclude) {
+		if (exclude != null) {
+			throw new RuntimeException("NYI");
+		}
+		return newSet.addEach(other, oldSet);
+	}
+
+	public boolean addEachUnfiltered(PTSetInternal other, PTSetInternal exclude) {
+		if (exclude != null) {
+			throw new RuntimeException("NYI");
+		}
+		return newSet.addEachUnfiltered(other, oldSet);
+	}
+
 	/** Adds n to this set, returns true if n was not already in this set. */
 	public boolean add(GNode n) {
 		if (oldSet.contains(n))
@@ -97,14 +129,67 @@ public class DoublePTSet extends PTSetInternal {
 
 	/** Sets all newly-added nodes to old nodes. */
 	public void flushNew() {
+		moveNewToOld();
+		newSet.clear();
+	}
+
+	public PTSetInternal swapNew(PTSetInternal spare) {
+		moveNewToOld();
+		final PTSetInternal ret = newSet;
+		if (spare == null)
+			newSet = newSetFactory.newSet(type, pag);
+		else {
+			spare.setType(type);
+			newSet = spare;
+		}
+		return ret;
+	}
+
+	private void moveNewToOld() {
+		if (sharedSets == null) {
+			oldSet.addAll(newSet, null);
+			return;
+		}
+		if (newSet.isEmpty())
+			return;
+		if (oldShared) {
+			final PTSetInternal copy = oldSetFactory.newSet(type, pag);
+			copy.addAll(oldSet, null);
+			oldSet = copy;
+			oldShared = false;
+		}
 		oldSet.addAll(newSet, null);
-		newSet = newSetFactory.newSet(type, pag);
+	}
+
+	/**
+	 * Replaces the old set by the shared set with the same contents, if sets
+	 * are shared. Called once solving is done, so that sets are hashed and
+	 * copied at most once.
+	 */
+	public void share() {
+		if (sharedSets == null || oldShared || oldSet.isEmpty())
+			return;
+		oldSet = sharedSets.intern(oldSet, SharedPTSets.hash(oldSet));
+		oldShared = true;
 	}
 
 	/** Sets all nodes to newly-added nodes. */
 	public void unFlushNew() {
 		newSet.addAll(oldSet, null);
-		oldSet = oldSetFactory.newSet(type, pag);
+		clearOld();
+	}
+
+	public void clear() {
+		newSet.clear();
+		clearOld();
+	}
+
+	private void clearOld() {
+		if (oldShared)
+			oldSet = oldSetFactory.newSet(type, pag);
+		else
+			oldSet.clear();
+		oldShared = false;
 	}
 
 	/** Merges other into this set. */
@@ -131,6 +216,7 @@ public class DoublePTSet extends PTSetInternal {
 		newNewSet.addAll(o, newOldSet);
 		newSet = newNewSet;
 		oldSet = newOldSet;
+		oldShared = false;
 	}
 
 	/** Returns true iff the set contains n. */
@@ -147,13 +233,21 @@ public class DoublePTSet extends PTSetInternal {
 	public static PTSetFactory getFactory(PTSetFactory newFactory, PTSetFactory oldFactory) {
 		newSetFactory = newFactory;
 		oldSetFactory = oldFactory;
+		sharedSets = PTAOptions.shareSets ? new SharedPTSets() : null;
 		return defaultP2SetFactory;
 	}
 
+	/** Returns the table of shared old sets, or null if sets are not shared. */
+	public static SharedPTSets getSharedSets() {
+		return sharedSets;
+	}
+
 	/* End of public methods. */
 	/* End of package methods. */
 
 	private PAG pag;
 	protected PTSetInternal newSet;
 	protected PTSetInternal oldSet;
+	/** true if oldSet is shared and must be copied before it changes */
+	private boolean oldShared = false;
 }
@@ -23,6 +23,7 @@ import soot.*;
 import soot.jimple.ClassConstant;
 
 import java.util.*;
+import java.util.function.IntConsumer;
 
 import pag.node.GNode;
 
@@ -77,6 +78,12 @@ public class EmptyPTSet extends PTSetInternal {
 		return false;
 	}
 
+	public void forEachNumber(IntConsumer action) {
+	}
+
+	public void clear() {
+	}
+
 	/** Adds n to this set, returns true if n was not already in this set. */
 	public boolean add(GNode n) {
 		throw new RuntimeException("can't add into empty immutable set");
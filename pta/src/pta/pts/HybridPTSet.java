@@ -19,6 +19,10 @@
 
 package pta.pts;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
 import pag.PAG;
 import pag.node.GNode;
 import soot.Scene;
@@ -44,6 +48,15 @@ public final class HybridPTSet extends PTSetInternal {
 		return empty;
 	}
 
+	public final int size() {
+		if (bits != null)
+			return bits.cardinality();
+		int ret = 0;
+		while (ret < nodes.length && nodes[ret] != null)
+			ret++;
+		return ret;
+	}
+
 	private boolean superAddAll(PTSetInternal other, PTSetInternal exclude) {
 		boolean ret = super.addAll(other, exclude);
 		if (ret)
@@ -66,6 +79,8 @@ public final class HybridPTSet extends PTSetInternal {
 
 			BitVector ebits = (exclude == null ? null : exclude.bits);
 			ret = bits.orAndAndNot(other.bits, mask, ebits);
+			if (mask != null)
+				ret = addUnmasked(other.bits, ebits, typeManager) | ret;
 		} else {
 			for (int i = 0; i < nodes.length; i++) {
 				if (other.nodes[i] == null)
@@ -80,6 +95,22 @@ public final class HybridPTSet extends PTSetInternal {
 		return ret;
 	}
 
+	/**
+	 * The type masks only know the alloc nodes created before they were made;
+	 * adds the later nodes of other not in exclude by checking their types,
+	 * as add does.
+	 */
+	private boolean addUnmasked(BitVector other, BitVector exclude, TypeMask typeManager) {
+		boolean ret = false;
+		for (int i = typeManager.firstUnmasked(), end = other.length(); i < end; i++)
+			if (other.get(i) && !bits.get(i) && (exclude == null || !exclude.get(i))
+					&& typeManager.castNeverFails(i, type)) {
+				bits.set(i);
+				ret = true;
+			}
+		return ret;
+	}
+
 	/**
 	 * Adds contents of other into this set, returns true if this set changed.
 	 */
@@ -107,6 +138,70 @@ public final class HybridPTSet extends PTSetInternal {
 		return v.getReturnValue();
 	}
 
+	public final void forEachNumber(IntConsumer action) {
+		if (bits == null) {
+			for (GNode node : nodes) {
+				if (node == null)
+					return;
+				action.accept(node.getNumber());
+			}
+		} else {
+			for (BitSetIterator it = bits.iterator(); it.hasNext();)
+				action.accept(it.next());
+		}
+	}
+
+	public final boolean addEach(PTSetInternal other, PTSetInternal exclude) {
+		if (!(other instanceof HybridPTSet) || exclude != null && !(exclude instanceof HybridPTSet))
+			return super.addEach(other, exclude);
+		final HybridPTSet o = (HybridPTSet) other, e = (HybridPTSet) exclude;
+		boolean ret = false;
+		if (o.bits == null) {
+			for (GNode node : o.nodes) {
+				if (node == null)
+					break;
+				if ((e == null || !e.contains(node)) && add(node))
+					ret = true;
+			}
+		} else {
+			final TypeMask typeManager = pag.getTypeManager();
+			for (BitSetIterator it = o.bits.iterator(); it.hasNext();) {
+				final int number = it.next();
+				if ((e == null || !e.containsNumber(number)) && typeManager.castNeverFails(number, type)
+						&& fastAdd(number))
+					ret = true;
+			}
+		}
+		return ret;
+	}
+
+	public final boolean addEachUnfiltered(PTSetInternal other, PTSetInternal exclude) {
+		if (!(other instanceof HybridPTSet) || exclude != null && !(exclude instanceof HybridPTSet))
+			return super.addEachUnfiltered(other, exclude);
+		final HybridPTSet o = (HybridPTSet) other, e = (HybridPTSet) exclude;
+		boolean ret = false;
+		if (o.bits == null) {
+			for (GNode node : o.nodes) {
+				if (node == null)
+					break;
+				if ((e == null || !e.contains(node)) && fastAdd(node))
+					ret = true;
+			}
+		} else if (e == null || e.bits != null) {
+			convertToBits();
+			ret = bits.orAndAndNot(o.bits, null, e == null ? null : e.bits);
+			if (ret)
+				empty = false;
+		} else {
+			for (BitSetIterator it = o.bits.iterator(); it.hasNext();) {
+				final int number = it.next();
+				if (!e.containsNumber(number) && fastAdd(number))
+					ret = true;
+			}
+		}
+		return ret;
+	}
+
 	/** Adds n to this set, returns true if n was not already in this set. */
 	public final boolean add(GNode n) {
 		if (pag.getTypeManager().castNeverFails(n.getType(), type)) {
@@ -115,6 +210,23 @@ public final class HybridPTSet extends PTSetInternal {
 		return false;
 	}
 
+	/**
+	 * Empties this set. A bit vector is zeroed and kept for the next set
+	 * growing large on this thread, so that sets cleared and refilled by the
+	 * solver stop allocating.
+	 */
+	public final void clear() {
+		Arrays.fill(nodes, null);
+		if (bits != null) {
+			bits.andNot(bits);
+			ArrayDeque<BitVector> spare = spareBits.get();
+			if (spare.size() < MAX_SPARE_BITS)
+				spare.push(bits);
+			bits = null;
+		}
+		empty = true;
+	}
+
 	/** Returns true iff the set contains n. */
 	public final boolean contains(GNode n) {
 		if (bits == null) {
@@ -131,6 +243,18 @@ public final class HybridPTSet extends PTSetInternal {
 		}
 	}
 
+	private boolean containsNumber(int number) {
+		if (bits != null)
+			return bits.get(number);
+		for (GNode node : nodes) {
+			if (node == null)
+				return false;
+			if (node.getNumber() == number)
+				return true;
+		}
+		return false;
+	}
+
 	public static PTSetFactory getFactory() {
 		return new PTSetFactory() {
 			public final PTSetInternal newSet(Type type, PAG pag) {
@@ -161,11 +285,22 @@ public final class HybridPTSet extends PTSetInternal {
 		return ret;
 	}
 
+	private boolean fastAdd(int number) {
+		if (bits == null)
+			return fastAdd(pag.getAllocNodeNumberer().get(number));
+		boolean ret = bits.set(number);
+		if (ret)
+			empty = false;
+		return ret;
+	}
+
 	protected final void convertToBits() {
 		if (bits != null)
 			return;
 		// ++numBitVectors;
-		bits = new BitVector(pag.getAllocNodeNumberer().size());
+		bits = spareBits.get().poll();
+		if (bits == null)
+			bits = new BitVector(pag.getAllocNodeNumberer().size());
 		for (GNode node : nodes) {
 			if (node != null) {
 				fastAdd(node);
@@ -174,6 +309,9 @@ public final class HybridPTSet extends PTSetInternal {
 	}
 
 	// public static int numBitVectors = 0;
+	private static final int MAX_SPARE_BITS = 16;
+	/** zeroed bit vectors of cleared sets */
+	private static final ThreadLocal<ArrayDeque<BitVector>> spareBits = ThreadLocal.withInitial(ArrayDeque::new);
 	private GNode[] nodes = new GNode[16];
 	private BitVector bits = null;
 	private PAG pag;
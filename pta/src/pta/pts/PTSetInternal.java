@@ -25,6 +25,7 @@ import soot.util.BitVector;
 import util.TypeMask;
 import soot.*;
 import java.util.*;
+import java.util.function.IntConsumer;
 
 import pag.PAG;
 import pag.node.GNode;
@@ -72,6 +73,41 @@ public abstract class PTSetInternal implements PointsToSet, EqualsSupportingPoin
 	/** Calls v's visit method on all nodes in this set. */
 	public abstract boolean forall(PTSetVisitor v);
 
+	/**
+	 * Passes the number of every alloc node in this set to action, without
+	 * looking the nodes up.
+	 */
+	public void forEachNumber(final IntConsumer action) {
+		forall(new PTSetVisitor() {
+			public final void visit(GNode n) {
+				action.accept(n.getNumber());
+			}
+		});
+	}
+
+	/**
+	 * Adds every node of other not in exclude, one by one, so that each passes
+	 * the type check of add; unlike addAll, no type mask is involved. Returns
+	 * true if this set changed.
+	 */
+	public boolean addEach(PTSetInternal other, final PTSetInternal exclude) {
+		return other.forall(new PTSetVisitor() {
+			public final void visit(GNode n) {
+				if ((exclude == null || !exclude.contains(n)) && add(n))
+					returnValue = true;
+			}
+		});
+	}
+
+	/**
+	 * Like addEach, but without type checks, for callers which know that every
+	 * node of other passes the type filter of this set. Returns true if this
+	 * set changed.
+	 */
+	public boolean addEachUnfiltered(PTSetInternal other, PTSetInternal exclude) {
+		return addEach(other, exclude);
+	}
+
 	/** Adds n to this set, returns true if n was not already in this set. */
 	public abstract boolean add(GNode n);
 
@@ -89,10 +125,22 @@ public abstract class PTSetInternal implements PointsToSet, EqualsSupportingPoin
 	public void flushNew() {
 	}
 
+	/**
+	 * Sets all newly-added nodes to old nodes like flushNew, but hands the set
+	 * holding them over to the caller. spare, an emptied set returned by an
+	 * earlier call, or null, becomes the new set.
+	 */
+	public PTSetInternal swapNew(PTSetInternal spare) {
+		throw new RuntimeException("NYI");
+	}
+
 	/** Sets all nodes to newly-added nodes. */
 	public void unFlushNew() {
 	}
 
+	/** Removes all nodes from this set, so that it can be reused. */
+	public abstract void clear();
+
 	/** Merges other into this set. */
 	public void mergeWith(PTSetInternal other) {
 		addAll(other, null);
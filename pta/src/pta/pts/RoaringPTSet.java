@@ -0,0 +1,356 @@
+/* Java and Android Analysis Framework
+ * Copyright (C) 2017 Jingbo Lu and Yulei Sui
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package pta.pts;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import pag.PAG;
+import pag.node.GNode;
+import soot.Type;
+import soot.util.BitVector;
+import util.TypeMask;
+
+/**
+ * Compressed bitmap implementation of points-to set, after Roaring bitmaps.
+ * Alloc node numbers are split into a 16-bit key and a 16-bit low part; the
+ * low parts of each key are kept in a sorted array while there are at most
+ * {@value #ARRAY_MAX} of them, and in a 65536-bit bitmap beyond that. Unlike
+ * {@link HybridPTSet}, a large set costs memory only for the ranges of alloc
+ * numbers it actually holds.
+ */
+public final class RoaringPTSet extends PTSetInternal {
+	/** largest number of elements in an array container */
+	static final int ARRAY_MAX = 4096;
+	private static final char[] NO_KEYS = new char[0];
+	private static final Container[] NO_CONTAINERS = new Container[0];
+
+	public RoaringPTSet(Type type, PAG pag) {
+		super(type);
+		this.pag = pag;
+	}
+
+	/** Returns true if this set contains no run-time objects. */
+	public final boolean isEmpty() {
+		return size == 0;
+	}
+
+	public final int size() {
+		return size;
+	}
+
+	/**
+	 * Adds contents of other into this set, returns true if this set changed.
+	 */
+	public final boolean addAll(final PTSetInternal other, final PTSetInternal exclude) {
+		if (other != null && !(other instanceof RoaringPTSet))
+			return super.addAll(other, exclude);
+		if (exclude != null && !(exclude instanceof RoaringPTSet))
+			return super.addAll(other, exclude);
+		return nativeAddAll((RoaringPTSet) other, (RoaringPTSet) exclude, getBitMask(other, pag));
+	}
+
+	/** Calls v's visit method on all nodes in this set. */
+	public final boolean forall(PTSetVisitor v) {
+		for (int k = 0; k < nContainers; k++) {
+			final int high = keys[k] << 16;
+			final Container c = containers[k];
+			if (c instanceof ArrayContainer) {
+				final ArrayContainer a = (ArrayContainer) c;
+				for (int j = 0; j < a.card; j++)
+					v.visit(pag.getAllocNodeNumberer().get(high | a.content[j]));
+			} else {
+				final long[] words = ((BitmapContainer) c).words;
+				for (int j = 0; j < words.length; j++)
+					for (long w = words[j]; w != 0; w &= w - 1)
+						v.visit(pag.getAllocNodeNumberer().get(high | j << 6 | Long.numberOfTrailingZeros(w)));
+			}
+		}
+		return v.getReturnValue();
+	}
+
+	public final void clear() {
+		Arrays.fill(containers, 0, nContainers, null);
+		nContainers = 0;
+		size = 0;
+	}
+
+	public final void forEachNumber(IntConsumer action) {
+		for (int k = 0; k < nContainers; k++) {
+			final int high = keys[k] << 16;
+			final Container c = containers[k];
+			if (c instanceof ArrayContainer) {
+				final ArrayContainer a = (ArrayContainer) c;
+				for (int j = 0; j < a.card; j++)
+					action.accept(high | a.content[j]);
+			} else {
+				final long[] words = ((BitmapContainer) c).words;
+				for (int j = 0; j < words.length; j++)
+					for (long w = words[j]; w != 0; w &= w - 1)
+						action.accept(high | j << 6 | Long.numberOfTrailingZeros(w));
+			}
+		}
+	}
+
+	public final boolean addEach(PTSetInternal other, PTSetInternal exclude) {
+		if (!(other instanceof RoaringPTSet) || exclude != null && !(exclude instanceof RoaringPTSet))
+			return super.addEach(other, exclude);
+		final RoaringPTSet o = (RoaringPTSet) other, e = (RoaringPTSet) exclude;
+		final TypeMask typeManager = pag.getTypeManager();
+		final int sizeBefore = size;
+		for (int ok = 0; ok < o.nContainers; ok++) {
+			final int high = o.keys[ok] << 16;
+			final Container oc = o.containers[ok];
+			if (oc instanceof ArrayContainer) {
+				final ArrayContainer a = (ArrayContainer) oc;
+				for (int j = 0; j < a.card; j++) {
+					final int number = high | a.content[j];
+					if ((e == null || !e.containsNumber(number)) && typeManager.castNeverFails(number, type))
+						fastAdd(number);
+				}
+			} else {
+				final long[] words = ((BitmapContainer) oc).words;
+				for (int j = 0; j < words.length; j++)
+					for (long w = words[j]; w != 0; w &= w - 1) {
+						final int number = high | j << 6 | Long.numberOfTrailingZeros(w);
+						if ((e == null || !e.containsNumber(number)) && typeManager.castNeverFails(number, type))
+							fastAdd(number);
+					}
+			}
+		}
+		return size != sizeBefore;
+	}
+
+	public final boolean addEachUnfiltered(PTSetInternal other, PTSetInternal exclude) {
+		if (!(other instanceof RoaringPTSet) || exclude != null && !(exclude instanceof RoaringPTSet))
+			return super.addEachUnfiltered(other, exclude);
+		return nativeAddAll((RoaringPTSet) other, (RoaringPTSet) exclude, null);
+	}
+
+	/** Adds n to this set, returns true if n was not already in this set. */
+	public final boolean add(GNode n) {
+		if (pag.getTypeManager().castNeverFails(n.getType(), type))
+			return fastAdd(n.getNumber());
+		return false;
+	}
+
+	/** Returns true iff the set contains n. */
+	public final boolean contains(GNode n) {
+		return containsNumber(n.getNumber());
+	}
+
+	private boolean containsNumber(int x) {
+		final int k = indexOf((char) (x >>> 16));
+		return k >= 0 && containers[k].contains((char) x);
+	}
+
+	public static PTSetFactory getFactory() {
+		return new PTSetFactory() {
+			public final PTSetInternal newSet(Type type, PAG pag) {
+				return new RoaringPTSet(type, pag);
+			}
+		};
+	}
+
+	/* End of public methods. */
+	/* End of package methods. */
+
+	private final PAG pag;
+	private char[] keys = NO_KEYS;
+	private Container[] containers = NO_CONTAINERS;
+	private int nContainers = 0;
+	private int size = 0;
+
+	private boolean fastAdd(int x) {
+		final int k = containerFor((char) (x >>> 16));
+		final Container c = containers[k];
+		if (c.contains((char) x))
+			return false;
+		containers[k] = c.add((char) x);
+		size++;
+		return true;
+	}
+
+	/** Adds other minus exclude; mask, if not null, filters the nodes added. */
+	private boolean nativeAddAll(RoaringPTSet other, RoaringPTSet exclude, BitVector mask) {
+		final TypeMask typeManager = pag.getTypeManager();
+		final int sizeBefore = size;
+		for (int ok = 0; ok < other.nContainers; ok++) {
+			final char key = other.keys[ok];
+			final int high = key << 16;
+			final Container oc = other.containers[ok];
+			Container ec = null;
+			if (exclude != null) {
+				int ek = exclude.indexOf(key);
+				if (ek >= 0)
+					ec = exclude.containers[ek];
+			}
+			final int k = containerFor(key);
+			Container c = containers[k];
+			if (mask == null && c instanceof BitmapContainer && oc instanceof BitmapContainer
+					&& (ec == null || ec instanceof BitmapContainer)) {
+				size += ((BitmapContainer) c).orAndNot((BitmapContainer) oc, (BitmapContainer) ec);
+				continue;
+			}
+			if (oc instanceof ArrayContainer) {
+				final ArrayContainer a = (ArrayContainer) oc;
+				for (int j = 0; j < a.card; j++) {
+					final char low = a.content[j];
+					if ((ec == null || !ec.contains(low)) && !c.contains(low)
+							&& (mask == null || passesMask(high | low, mask, typeManager))) {
+						c = c.add(low);
+						size++;
+					}
+				}
+			} else {
+				final long[] words = ((BitmapContainer) oc).words;
+				for (int j = 0; j < words.length; j++)
+					for (long w = words[j]; w != 0; w &= w - 1) {
+						final char low = (char) (j << 6 | Long.numberOfTrailingZeros(w));
+						if ((ec == null || !ec.contains(low)) && !c.contains(low)
+								&& (mask == null || passesMask(high | low, mask, typeManager))) {
+							c = c.add(low);
+							size++;
+						}
+					}
+			}
+			if (c.card == 0)
+				removeContainer(k);
+			else
+				containers[k] = c;
+		}
+		return size != sizeBefore;
+	}
+
+	/**
+	 * Type filter of addAll. The mask decides for the alloc nodes it knows
+	 * about; nodes created after the masks were made are checked directly, as
+	 * HybridPTSet does.
+	 */
+	private boolean passesMask(int number, BitVector mask, TypeMask typeManager) {
+		if (mask.get(number))
+			return true;
+		if (typeManager.isMasked(number))
+			return false;
+		return typeManager.castNeverFails(number, type);
+	}
+
+	/** Returns the index of the container of key, or -(insertion point) - 1. */
+	private int indexOf(char key) {
+		return Arrays.binarySearch(keys, 0, nContainers, key);
+	}
+
+	/** Returns the index of the container of key, creating it if needed. */
+	private int containerFor(char key) {
+		int k = indexOf(key);
+		if (k >= 0)
+			return k;
+		k = -k - 1;
+		if (nContainers == keys.length) {
+			int cap = Math.max(4, nContainers << 1);
+			keys = Arrays.copyOf(keys, cap);
+			containers = Arrays.copyOf(containers, cap);
+		}
+		System.arraycopy(keys, k, keys, k + 1, nContainers - k);
+		System.arraycopy(containers, k, containers, k + 1, nContainers - k);
+		keys[k] = key;
+		containers[k] = new ArrayContainer();
+		nContainers++;
+		return k;
+	}
+
+	/** Drops the container at index k, which an addAll has left empty. */
+	private void removeContainer(int k) {
+		nContainers--;
+		System.arraycopy(keys, k + 1, keys, k, nContainers - k);
+		System.arraycopy(containers, k + 1, containers, k, nContainers - k);
+		containers[nContainers] = null;
+	}
+
+	/** The low 16 bits of the elements sharing one key. */
+	private static abstract class Container {
+		int card = 0;
+
+		abstract boolean contains(char low);
+
+		/** Adds low, which must not be in this container yet; returns the container holding the result. */
+		abstract Container add(char low);
+	}
+
+	private static final class ArrayContainer extends Container {
+		private static final char[] EMPTY = new char[0];
+		char[] content = EMPTY;
+
+		boolean contains(char low) {
+			return Arrays.binarySearch(content, 0, card, low) >= 0;
+		}
+
+		Container add(char low) {
+			if (card == ARRAY_MAX) {
+				BitmapContainer ret = new BitmapContainer();
+				for (int j = 0; j < card; j++)
+					ret.set(content[j]);
+				ret.set(low);
+				return ret;
+			}
+			final int pos = -Arrays.binarySearch(content, 0, card, low) - 1;
+			if (card == content.length)
+				content = Arrays.copyOf(content, Math.min(ARRAY_MAX, Math.max(4, card + (card >> 1))));
+			System.arraycopy(content, pos, content, pos + 1, card - pos);
+			content[pos] = low;
+			card++;
+			return this;
+		}
+	}
+
+	private static final class BitmapContainer extends Container {
+		final long[] words = new long[1 << 10];
+
+		boolean contains(char low) {
+			return (words[low >>> 6] & (1L << low)) != 0;
+		}
+
+		Container add(char low) {
+			set(low);
+			return this;
+		}
+
+		void set(char low) {
+			words[low >>> 6] |= 1L << low;
+			card++;
+		}
+
+		/** Adds other minus exclude, returns the number of elements added. */
+		int orAndNot(BitmapContainer other, BitmapContainer exclude) {
+			int added = 0;
+			for (int j = 0; j < words.length; j++) {
+				long w = other.words[j] & ~words[j];
+				if (exclude != null)
+					w &= ~exclude.words[j];
+				if (w != 0) {
+					words[j] |= w;
+					added += Long.bitCount(w);
+				}
+			}
+			card += added;
+			return added;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/* Java and Android Analysis Framework
+ * Copyright (C) 2017 Jingbo Lu and Yulei Sui
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package pta.pts;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import soot.Type;
+import soot.util.BitVector;
+
+/**
+ * Hash-consing table for the old sets of {@link DoublePTSet}. A set entered
+ * here is shared by every points-to set with the same type and contents and
+ * must not be changed any more; DoublePTSet copies it before it grows. The
+ * table holds the sets weakly, so sets nobody refers to any more vanish.
+ *
+ * The hash of a set is the sum of a mix of its alloc numbers.
+ */
+public final class SharedPTSets {
+	private final Map<Integer, List<WeakReference<PTSetInternal>>> table = new HashMap<>();
+	private int lookups = 0;
+	private int hits = 0;
+
+	/** Returns the hash of the elements of set. */
+	public static int hash(PTSetInternal set) {
+		final int[] ret = new int[1];
+		set.forEachNumber(number -> ret[0] += mix(number));
+		return ret[0];
+	}
+
+	private static int mix(int x) {
+		x *= 0x9e3779b9;
+		return x ^ (x >>> 16);
+	}
+
+	/**
+	 * Returns the shared set equal to set, which has the given hash, entering
+	 * set itself if there is none yet.
+	 */
+	public PTSetInternal intern(PTSetInternal set, int hash) {
+		lookups++;
+		final Type type = set.getType();
+		final Integer key = 31 * hash + (type == null ? 0 : type.getNumber());
+		List<WeakReference<PTSetInternal>> bucket = table.get(key);
+		if (bucket == null)
+			table.put(key, bucket = new ArrayList<>(1));
+		for (Iterator<WeakReference<PTSetInternal>> it = bucket.iterator(); it.hasNext();) {
+			final PTSetInternal other = it.next().get();
+			if (other == null)
+				it.remove();
+			else if (Objects.equals(type, other.getType()) && sameElements(set, other)) {
+				hits++;
+				return other;
+			}
+		}
+		bucket.add(new WeakReference<>(set));
+		return set;
+	}
+
+	private static boolean sameElements(PTSetInternal a, final PTSetInternal b) {
+		if (a.size() != b.size())
+			return false;
+		final BitVector numbers = new BitVector();
+		b.forEachNumber(numbers::set);
+		final boolean[] same = { true };
+		a.forEachNumber(number -> {
+			if (!numbers.get(number))
+				same[0] = false;
+		});
+		return same[0];
+	}
+
+	/** Number of sets looked up so far. */
+	public int getLookups() {
+		return lookups;
+	}
+
+	/** Number of lookups which found an equal set to share. */
+	public int getHits() {
+		return hits;
+	}
+}
@@ -0,0 +1,198 @@
+/* Java and Android Analysis Framework
+ * Copyright (C) 2017 Jingbo Lu and Yulei Sui
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package pta.solver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import pag.PAG;
+import pag.node.GNode;
+import pag.node.var.Var_Node;
+import pta.pts.PTSetInternal;
+import pta.pts.PTSetVisitor;
+
+/**
+ * Lazy cycle detection (Hardekopf and Lin, PLDI'07) on simple edges. When
+ * propagation along an edge src --> tgt changes nothing and both ends point
+ * to the same objects, the edge probably lies on a cycle; a Tarjan pass from
+ * tgt then finds the cycles and their nodes are merged with
+ * {@link GNode#mergeWith(GNode)}, so that they share one points-to set.
+ *
+ * Only edges between nodes of the same declared type are followed, which
+ * makes type filtering a no-op inside a merged cycle and keeps the result
+ * identical to the one without merging. The PAG itself keeps the original
+ * edges; the solver looks at all members of a merged node instead.
+ */
+public class CycleCollapser {
+	private final PAG pag;
+	/** members of each merged node, keyed by their representative */
+	private final Map<Var_Node, List<Var_Node>> members = new HashMap<>();
+	/** edges which have already triggered a cycle detection */
+	private final Set<Long> checkedEdges = new HashSet<>();
+	/** candidate edges found during the current solver step */
+	private final Collection<Var_Node[]> candidates = new ArrayList<>();
+	private int mergedNodes = 0;
+
+	public CycleCollapser(PAG pag) {
+		this.pag = pag;
+	}
+
+	/** Returns the nodes merged into rep, including rep itself. */
+	public List<Var_Node> members(Var_Node rep) {
+		List<Var_Node> ret = members.get(rep);
+		return ret == null ? Collections.singletonList(rep) : ret;
+	}
+
+	/** Number of nodes merged into others so far. */
+	public int getMergedNodes() {
+		return mergedNodes;
+	}
+
+	/** Notes that propagating along src --> tgt did not change tgt. */
+	public void unchangedEdge(Var_Node src, Var_Node tgt) {
+		if (src == tgt || !Objects.equals(src.getType(), tgt.getType()))
+			return;
+		if (checkedEdges.add(((long) src.getNumber() << 32) | tgt.getNumber()))
+			candidates.add(new Var_Node[] { src, tgt });
+	}
+
+	/**
+	 * Runs cycle detection for the candidate edges of the last step and merges
+	 * all cycles found. Returns the representatives of the merged nodes.
+	 */
+	public Collection<Var_Node> collapse() {
+		if (candidates.isEmpty())
+			return Collections.emptyList();
+		Set<Var_Node> ret = new LinkedHashSet<>();
+		for (Var_Node[] edge : candidates) {
+			Var_Node src = (Var_Node) edge[0].getReplacement(), tgt = (Var_Node) edge[1].getReplacement();
+			if (src == tgt || !samePointsTo(src.getP2Set(), tgt.getP2Set()))
+				continue;
+			for (List<Var_Node> scc : findCycles(tgt))
+				ret.add(merge(scc));
+		}
+		candidates.clear();
+		ret.removeIf(rep -> rep.getReplacement() != rep);
+		return ret;
+	}
+
+	private static boolean samePointsTo(PTSetInternal a, PTSetInternal b) {
+		if (a.size() != b.size())
+			return false;
+		return !a.forall(new PTSetVisitor() {
+			public final void visit(GNode n) {
+				if (!b.contains(n))
+					returnValue = true;
+			}
+		});
+	}
+
+	/** Successors of a representative which may be merged with it. */
+	private List<Var_Node> successors(Var_Node rep) {
+		List<Var_Node> ret = new ArrayList<>();
+		for (Var_Node member : members(rep))
+			for (Var_Node element : pag.simpleLookup(member)) {
+				Var_Node succ = (Var_Node) element.getReplacement();
+				if (succ != rep && Objects.equals(rep.getType(), succ.getType()))
+					ret.add(succ);
+			}
+		return ret;
+	}
+
+	/** Iterative Tarjan from root; returns the non-trivial SCCs reachable from it. */
+	private List<List<Var_Node>> findCycles(Var_Node root) {
+		List<List<Var_Node>> ret = new ArrayList<>();
+		Map<Var_Node, Integer> index = new HashMap<>(), lowlink = new HashMap<>();
+		ArrayDeque<Var_Node> stack = new ArrayDeque<>();
+		Set<Var_Node> onStack = new HashSet<>();
+		ArrayDeque<Var_Node> callStack = new ArrayDeque<>();
+		ArrayDeque<Iterator<Var_Node>> iterStack = new ArrayDeque<>();
+		int next = 0;
+
+		index.put(root, next);
+		lowlink.put(root, next++);
+		stack.push(root);
+		onStack.add(root);
+		callStack.push(root);
+		iterStack.push(successors(root).iterator());
+		while (!callStack.isEmpty()) {
+			Var_Node v = callStack.peek();
+			Iterator<Var_Node> it = iterStack.peek();
+			if (it.hasNext()) {
+				Var_Node w = it.next();
+				Integer wIndex = index.get(w);
+				if (wIndex == null) {
+					index.put(w, next);
+					lowlink.put(w, next++);
+					stack.push(w);
+					onStack.add(w);
+					callStack.push(w);
+					iterStack.push(successors(w).iterator());
+				} else if (onStack.contains(w) && wIndex < lowlink.get(v))
+					lowlink.put(v, wIndex);
+				continue;
+			}
+			callStack.pop();
+			iterStack.pop();
+			if (!callStack.isEmpty()) {
+				Var_Node parent = callStack.peek();
+				if (lowlink.get(v) < lowlink.get(parent))
+					lowlink.put(parent, lowlink.get(v));
+			}
+			if (lowlink.get(v).equals(index.get(v))) {
+				List<Var_Node> scc = new ArrayList<>();
+				Var_Node w;
+				do {
+					w = stack.pop();
+					onStack.remove(w);
+					scc.add(w);
+				} while (w != v);
+				if (scc.size() > 1)
+					ret.add(scc);
+			}
+		}
+		return ret;
+	}
+
+	private Var_Node merge(List<Var_Node> scc) {
+		Var_Node rep = scc.get(0);
+		List<Var_Node> repMembers = members.get(rep);
+		if (repMembers == null)
+			members.put(rep, repMembers = new ArrayList<>(members(rep)));
+		for (int i = 1; i < scc.size(); i++) {
+			Var_Node other = scc.get(i);
+			rep.mergeWith(other);
+			List<Var_Node> otherMembers = members.remove(other);
+			repMembers.addAll(otherMembers == null ? Collections.singletonList(other) : otherMembers);
+			mergedNodes++;
+		}
+		return rep;
+	}
+}
@@ -0,0 +1,116 @@
+/* Java and Android Analysis Framework
+ * Copyright (C) 2017 Jingbo Lu and Yulei Sui
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package pta.solver;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+
+import pag.PAG;
+import pag.node.var.Var_Node;
+import soot.util.BitVector;
+
+/**
+ * Worklist of var nodes ordered by the finishing numbers assigned by
+ * {@link TopoSorter}, highest first. Sorted nodes live in a two-level bitset
+ * indexed by finishing number; nodes created after sorting are kept in a
+ * FIFO queue that is served first, just as their larger finishing numbers
+ * put them first in the former TreeSet. Apart from the occasional growth of
+ * the queue, adding and polling do not allocate.
+ */
+public final class FinishNumberWorkList {
+	/** largest finishing number handed out by the last sort */
+	private final int sortedMax;
+	private final Var_Node[] sorted;
+	private final long[] bits;
+	/** bit w is set iff bits[w] != 0 */
+	private final long[] summary;
+	/** highest summary word which may be non-zero */
+	private int top = -1;
+	private final ArrayDeque<Var_Node> fresh = new ArrayDeque<>();
+	private final BitVector inFresh = new BitVector();
+	private int size = 0;
+
+	public FinishNumberWorkList(PAG pag) {
+		sortedMax = pag.maxFinishNumber;
+		sorted = new Var_Node[sortedMax + 1];
+		bits = new long[(sortedMax >>> 6) + 1];
+		summary = new long[(bits.length >>> 6) + 1];
+	}
+
+	/** Adds n, returns true if it was not in the worklist yet. */
+	public boolean add(Var_Node n) {
+		final int fn = n.getFinishingNumber();
+		if (fn > sortedMax) {
+			if (!inFresh.set(n.getNumber()))
+				return false;
+			fresh.add(n);
+			size++;
+			return true;
+		}
+		final int w = fn >>> 6;
+		final long bit = 1L << fn;
+		if ((bits[w] & bit) != 0)
+			return false;
+		bits[w] |= bit;
+		final int s = w >>> 6;
+		summary[s] |= 1L << w;
+		if (s > top)
+			top = s;
+		sorted[fn] = n;
+		size++;
+		return true;
+	}
+
+	public void addAll(Collection<? extends Var_Node> nodes) {
+		for (Var_Node n : nodes)
+			add(n);
+	}
+
+	/** Removes and returns the node to be processed next, or null if empty. */
+	public Var_Node pollFirst() {
+		if (!fresh.isEmpty()) {
+			final Var_Node n = fresh.poll();
+			inFresh.clear(n.getNumber());
+			size--;
+			return n;
+		}
+		while (top >= 0 && summary[top] == 0)
+			top--;
+		if (top < 0)
+			return null;
+		final int w = (top << 6) + 63 - Long.numberOfLeadingZeros(summary[top]);
+		final int fn = (w << 6) + 63 - Long.numberOfLeadingZeros(bits[w]);
+		bits[w] &= ~(1L << fn);
+		if (bits[w] == 0)
+			summary[top] &= ~(1L << w);
+		final Var_Node n = sorted[fn];
+		sorted[fn] = null;
+		size--;
+		return n;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,179 @@
+/* Java and Android Analysis Framework
+ * Copyright (C) 2017 Jingbo Lu and Yulei Sui
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package pta.solver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import driver.PTAOptions;
+import pag.node.alloc.Alloc_Node;
+import pag.node.var.Var_Node;
+import pta.PTA;
+import pta.pts.PTSetInternal;
+import soot.G;
+
+/**
+ * Worklist solver which propagates points-to sets in rounds. Each round drains
+ * the whole worklist, moves the new objects of every drained node to its old
+ * set, and pushes these deltas along simple edges on a pool of worker
+ * threads. Every target node is updated by exactly one worker, so points-to
+ * sets are never written concurrently. Call graph updates, field edges and
+ * PAG construction stay on the solver thread and are handled node by node
+ * afterwards, as in {@link Solver}. Both solvers reach the same fixed point.
+ * Deltas are detached from their nodes with {@link PTSetInternal#swapNew}
+ * and, once emptied, serve as new sets in later rounds.
+ */
+public class ParallelSolver extends Solver {
+	/** below this number of targets a round is propagated on the solver thread */
+	private static final int PARALLEL_THRESHOLD = 256;
+	/** deltas of drained nodes whose call sites and fields are not handled yet */
+	private final Map<Var_Node, PTSetInternal> pendingDeltas = new HashMap<>();
+	/**
+	 * emptied deltas of earlier rounds, taken over by nodes as new sets. Deltas
+	 * are only detached and recycled on the solver thread, workers merely read
+	 * them, so a single pool serves all threads.
+	 */
+	private final ArrayDeque<PTSetInternal> spareDeltas = new ArrayDeque<>();
+	/** new sets allocated because no spare delta was left, per round */
+	private int freshDeltas = 0;
+	private int maxFreshDeltas = 0;
+	private int freshRounds = 0;
+	private int rounds = 0;
+
+	public ParallelSolver(PTA _pta) {
+		super(_pta);
+		collapser = null; // cycles are only collapsed by the sequential solver
+	}
+
+	@Override
+	protected void solve() {
+		while (!varNodeWorkList.isEmpty()) {
+			rounds++;
+			pag.compactEdges();
+			final List<Var_Node> batch = new ArrayList<>(varNodeWorkList.size());
+			while (!varNodeWorkList.isEmpty())
+				batch.add(varNodeWorkList.pollFirst());
+			freshDeltas = 0;
+			for (Var_Node src : batch) {
+				final PTSetInternal spare = spareDeltas.poll();
+				if (spare == null)
+					freshDeltas++;
+				pendingDeltas.put(src, src.getP2Set().swapNew(spare));
+			}
+			if (freshDeltas > 0)
+				freshRounds++;
+			maxFreshDeltas = Math.max(maxFreshDeltas, freshDeltas);
+
+			propagateDeltas(batch);
+
+			for (Var_Node src : batch) {
+				final PTSetInternal delta = pendingDeltas.get(src);
+
+				updateCallGraph(src, delta);
+
+				handleAddedComplexEdges();
+
+				handleStoreAndLoadOnBase(src, delta);
+
+				pendingDeltas.remove(src);
+				delta.clear();
+				spareDeltas.push(delta);
+
+				handleAddedSimpleEdges();
+			}
+		}
+		G.v().out.println("[PTA] Parallel solver finished in " + rounds + " rounds with " + PTAOptions.threads + " threads.");
+		G.v().out.println("[PTA] New sets allocated in " + freshRounds + " rounds, at most " + maxFreshDeltas
+				+ " in one round; the other rounds reused spare deltas only.");
+	}
+
+	/** Pushes the deltas of one round along simple edges, grouped by target. */
+	private void propagateDeltas(List<Var_Node> batch) {
+		final Map<Var_Node, Incoming> incoming = new LinkedHashMap<>();
+		for (Var_Node src : batch) {
+			final PTSetInternal delta = pendingDeltas.get(src);
+			pag.simpleLookup(src).forEachLabelled((element, filter) -> {
+				checkNotConstant(src, element);
+				incoming.computeIfAbsent(element, k -> new Incoming()).add(delta, filter);
+			});
+		}
+		final List<Var_Node> targets = new ArrayList<>(incoming.keySet());
+		final List<Var_Node> changed;
+		if (targets.size() < PARALLEL_THRESHOLD || PTAOptions.threads <= 1)
+			changed = targets.stream().filter(t -> addAll(t, incoming.get(t))).collect(Collectors.toList());
+		else
+			try {
+				changed = PTA.workers().submit(() -> targets.parallelStream().filter(t -> addAll(t, incoming.get(t)))
+						.collect(Collectors.toList())).get();
+			} catch (InterruptedException | ExecutionException e) {
+				throw new RuntimeException("Parallel propagation failed", e);
+			}
+		varNodeWorkList.addAll(changed);
+	}
+
+	private boolean addAll(Var_Node pointer, Incoming in) {
+		boolean ret = false;
+		for (int i = 0; i < in.deltas.size(); i++)
+			ret = addAll(pointer, in.deltas.get(i), in.filters[i]) | ret;
+		return ret;
+	}
+
+	/** Deltas reaching one target in a round, with the type filters of their edges. */
+	private static final class Incoming {
+		final List<PTSetInternal> deltas = new ArrayList<>(2);
+		/** filters[i] is the type filter of the edge of deltas.get(i) */
+		int[] filters = new int[2];
+
+		void add(PTSetInternal delta, int filter) {
+			final int i = deltas.size();
+			if (i == filters.length)
+				filters = Arrays.copyOf(filters, i << 1);
+			filters[i] = filter;
+			deltas.add(delta);
+		}
+	}
+
+	/**
+	 * The old set of a drained node already holds its delta; hide the delta
+	 * until the node's own call sites are handled so that no object is
+	 * dispatched twice on a new call site.
+	 */
+	@Override
+	protected PTSetInternal receivedSoFar(Var_Node receiver) {
+		final PTSetInternal oldSet = receiver.getP2Set().getOldSet();
+		final PTSetInternal delta = pendingDeltas.get(receiver);
+		if (delta == null || delta.isEmpty())
+			return oldSet;
+		final PTSetInternal ret = pag.getSetFactory().newSet(null, pag);
+		oldSet.forEachNumber(number -> {
+			final Alloc_Node n = allocNodes.get(number);
+			if (!delta.contains(n))
+				ret.add(n);
+		});
+		return ret;
+	}
+}
@@ -19,6 +19,7 @@
 
 package pta.solver;
 
+import pag.EdgeStore;
 import pag.PAG;
 import pag.node.GNode;
 import pag.node.alloc.Alloc_Node;
@@ -29,8 +30,11 @@ import pag.node.var.AllocDotField_Node;
 import pag.node.var.FieldRef_Node;
 import pag.node.var.Var_Node;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.TreeSet;
+import java.util.Collections;
+import java.util.List;
 
 import driver.FakeMainFactory;
 import driver.PTAOptions;
@@ -38,8 +42,9 @@ import pta.PTA.CallGraphBuilder;
 import pta.ContextSensPTA;
 import pta.ContextSensPTA.SCGBuilder;
 import pta.PTA;
+import pta.pts.DoublePTSet;
 import pta.pts.PTSetInternal;
-import pta.pts.PTSetVisitor;
+import pta.pts.SharedPTSets;
 import soot.Context;
 import soot.MethodOrMethodContext;
 import soot.RefType;
@@ -48,26 +53,70 @@ import soot.Unit;
 import soot.jimple.spark.pag.SparkField;
 import soot.jimple.spark.solver.Propagator;
 import soot.toolkits.scalar.Pair;
+import soot.util.ArrayNumberer;
 import soot.util.queue.QueueReader;
 
-public final class Solver extends Propagator {
+public class Solver extends Propagator {
 	protected PAG pag;
+	protected ArrayNumberer<Alloc_Node> allocNodes;
 	protected PTA pta;
 	protected CallGraphBuilder cgb;
-	protected final TreeSet<Var_Node> varNodeWorkList = new TreeSet<Var_Node>();
+	protected FinishNumberWorkList varNodeWorkList;
+	protected QueueReader<Pair<Alloc_Node, Var_Node>> addedAllocEdges;
+	protected QueueReader<Pair<Var_Node, Var_Node>> addedSimpleEdges;
+	protected QueueReader<Pair<Var_Node, FieldRef_Node>> addedStoreEdges;
+	protected QueueReader<Pair<FieldRef_Node, Var_Node>> addedLoadEdges;
+	/** merges simple-edge cycles; null if cycle collapsing is disabled */
+	protected CycleCollapser collapser;
+	/** calls of pta.build() while updating the call graph, and those saved by batching new sites */
+	private long buildRounds = 0, savedBuildRounds = 0;
+	/** loads and stores on the field refs of each base var node, by node number; null if not built yet */
+	private FieldEdges[][] fieldEdges = new FieldEdges[1024][];
 
 	public Solver(PTA _pta) {
 		cgb = _pta.getCgb();
 		pag = _pta.getPag();
+		allocNodes = pag.getAllocNodeNumberer();
 		pta = _pta;
+		if (PTAOptions.collapseCycles)
+			collapser = new CycleCollapser(pag);
 	}
 
 	@Override
 	public final void propagate() {
-		final QueueReader<Pair<Alloc_Node, Var_Node>> addedAllocEdges = pag.allocReader();
-		final QueueReader<Pair<Var_Node, Var_Node>> addedSimpleEdges = pag.simpleReader();
-		final QueueReader<Pair<Var_Node, FieldRef_Node>> addedStoreEdges = pag.storeReader();
-		final QueueReader<Pair<FieldRef_Node, Var_Node>> addedLoadEdges = pag.loadReader();
+		initialize();
+		solve();
+		if (DoublePTSet.getSharedSets() != null)
+			shareSets();
+		if (collapser != null)
+			pta.evaluator().addLine("#Merged nodes (cycles)", collapser.getMergedNodes());
+		if (PTAOptions.batchCallGraph)
+			pta.evaluator().addLine("#CG build rounds (saved by batching)", buildRounds + " (" + savedBuildRounds + ")");
+		SharedPTSets sharedSets = DoublePTSet.getSharedSets();
+		if (sharedSets != null)
+			pta.evaluator().addLine("#Shared old sets (hits/lookups)", sharedSets.getHits() + "/" + sharedSets.getLookups());
+	}
+
+	/** Shares the old sets of all nodes, which have stopped changing. */
+	private void shareSets() {
+		for (Var_Node v : pag.getVarNodeNumberer())
+			if (v.getP2Set() instanceof DoublePTSet)
+				((DoublePTSet) v.getP2Set()).share();
+		for (FieldRef_Node f : pag.getFieldRefNodeNumberer())
+			if (f.getP2Set() instanceof DoublePTSet)
+				((DoublePTSet) f.getP2Set()).share();
+	}
+
+	/** Returns the nodes sharing the points-to set of the representative rep. */
+	protected Collection<Var_Node> members(Var_Node rep) {
+		return collapser == null ? Collections.singletonList(rep) : collapser.members(rep);
+	}
+
+	protected void initialize() {
+		addedAllocEdges = pag.allocReader();
+		addedSimpleEdges = pag.simpleReader();
+		addedStoreEdges = pag.storeReader();
+		addedLoadEdges = pag.loadReader();
 		pta.build();
 		if(PTAOptions.staticcontext == PTAOptions.THIS && pta instanceof ContextSensPTA){
 			ContextSensPTA csPTA = (ContextSensPTA)pta;
@@ -81,136 +130,218 @@ public final class Solver extends Propagator {
 			
 			pag.rootNode = rootNode;
 		}
+		pag.compactEdges();
 		new TopoSorter(pag, false).sort();
-		handleAddedSimpleEdges(addedAllocEdges,addedSimpleEdges);
-		
+		varNodeWorkList = new FinishNumberWorkList(pag);
+		handleAddedSimpleEdges();
+	}
+
+	protected void solve() {
 		while (!varNodeWorkList.isEmpty()) {
+			pag.compactEdges();
 			final Var_Node src = varNodeWorkList.pollFirst();
+			if (src.getReplacement() != src)
+				continue; // merged into another node
+			final PTSetInternal newset = src.getP2Set().getNewSet();
 			
-			propagateFromSrc(src);
+			propagateFromSrc(src, newset);
 			
-			updateCallGraph(src);
+			updateCallGraph(src, newset);
 			
-			handleAddedComplexEdges(addedStoreEdges,addedLoadEdges);
+			handleAddedComplexEdges();
 			
-			handleStoreAndLoadOnBase(src);
+			handleStoreAndLoadOnBase(src, newset);
 			
 			src.getP2Set().flushNew();
 			
-			handleAddedSimpleEdges(addedAllocEdges,addedSimpleEdges);
+			handleAddedSimpleEdges();
+			
+			if (collapser != null)
+				for (Var_Node rep : collapser.collapse())
+					if (!rep.getP2Set().getNewSet().isEmpty())
+						varNodeWorkList.add(rep);
 		}
 	}
 
-	private void propagateFromSrc(Var_Node src) {
-		final PTSetInternal newset = src.getP2Set().getNewSet();
-		pag.simpleLookup(src).forEach(element -> {
-			if (addAll(element, newset)) {
-				varNodeWorkList.add(element);
-			}
-			if(element instanceof AllocDotField_Node){
-				Alloc_Node baseAlloc = ((AllocDotField_Node) element).getBase();
-				if(isConstant(baseAlloc))
-					throw new RuntimeException("Modifying ConstNode:" + element + " with " +src);
-			}
-		});
+	protected void propagateFromSrc(Var_Node src, final PTSetInternal newset) {
+		for (Var_Node member : members(src))
+			pag.simpleLookup(member).forEachLabelled((element, filter) -> {
+				final Var_Node tgt = (Var_Node) element.getReplacement();
+				if (tgt != src)
+					if (addAll(tgt, newset, filter)) {
+						varNodeWorkList.add(tgt);
+					} else if (collapser != null)
+						collapser.unchangedEdge(src, tgt);
+				checkNotConstant(member, element);
+			});
 	}
 
-	private void handleStoreAndLoadOnBase(Var_Node src) {
-		final PTSetInternal newP2Set = src.getP2Set().getNewSet();
-		for (final FieldRef_Node fr : src.getAllFieldRefs()) {
-			final SparkField fld = fr.getField();
-			/// foreach src.fld = v do add simple from v-->o.fld where o\in
-			/// pts(src)
-			for (final Var_Node v : pag.storeInvLookup(fr)) {
-				newP2Set.forall(new PTSetVisitor() {
-					public final void visit(GNode n) {
-						Alloc_Node a = (Alloc_Node) n;
-						if(isConstant(a))
-							return; //	cannot modify a const!
-						final Var_Node oDotF = pta.parameterize(fld, a);
-						pag.addSimpleEdge(v, oDotF);
-					}
+	protected void checkNotConstant(Var_Node src, Var_Node element) {
+		if(element instanceof AllocDotField_Node){
+			Alloc_Node baseAlloc = ((AllocDotField_Node) element).getBase();
+			if(isConstant(baseAlloc))
+				throw new RuntimeException("Modifying ConstNode:" + element + " with " +src);
+		}
+	}
+
+	protected void handleStoreAndLoadOnBase(Var_Node src, final PTSetInternal newP2Set) {
+		for (Var_Node member : members(src))
+			for (final FieldEdges edges : fieldEdges(member))
+				newP2Set.forEachNumber(number -> {
+					Alloc_Node a = allocNodes.get(number);
+					boolean constant = isConstant(a);
+					if (constant && edges.loads.length == 0)
+						return;
+					// the field of each new object is resolved once for all loads and stores
+					final Var_Node oDotF = pta.parameterize(edges.field, a);
+					/// foreach src.fld = v do add simple from v-->o.fld where o\in
+					/// pts(src)
+					if (!constant) //	cannot modify a const!
+						for (Var_Node v : edges.stores)
+							pag.addSimpleEdge(v, oDotF);
+					/// foreach v = src.fld do add simple from o.fld-->v where o\in
+					/// pts(src)
+					for (Var_Node element : edges.loads)
+						pag.addSimpleEdge(oDotF, element);
 				});
+	}
+
+	/** Loads from and stores into one field of a base var node. */
+	private static final class FieldEdges {
+		final SparkField field;
+		/** v of each store base.field = v */
+		final Var_Node[] stores;
+		/** v of each load v = base.field */
+		final Var_Node[] loads;
+
+		FieldEdges(SparkField field, Var_Node[] stores, Var_Node[] loads) {
+			this.field = field;
+			this.stores = stores;
+			this.loads = loads;
+		}
+	}
+
+	/**
+	 * Returns the loads and stores on the field refs of base, indexed by the
+	 * number of base. The entry of a base is dropped whenever a load or store
+	 * on it is added, see handleAddedComplexEdges.
+	 */
+	private FieldEdges[] fieldEdges(Var_Node base) {
+		final int number = base.getNumber();
+		if (number >= fieldEdges.length)
+			fieldEdges = Arrays.copyOf(fieldEdges, Math.max(number + 1, fieldEdges.length << 1));
+		FieldEdges[] ret = fieldEdges[number];
+		if (ret == null) {
+			List<FieldEdges> entries = new ArrayList<>();
+			for (FieldRef_Node fr : base.getAllFieldRefs()) {
+				Var_Node[] stores = toArray(pag.storeInvLookup(fr));
+				Var_Node[] loads = toArray(pag.loadLookup(fr));
+				if (stores.length > 0 || loads.length > 0)
+					entries.add(new FieldEdges(fr.getField(), stores, loads));
 			}
-			/// foreach v = src.fld do add simple from o.fld-->v where o\in
-			/// pts(src)
-			for (final Var_Node element : pag.loadLookup(fr))
-				newP2Set.forall(new PTSetVisitor() {
-					public final void visit(GNode n) {
-						final Var_Node oDotF = pta.parameterize(fld, (Alloc_Node) n);
-						pag.addSimpleEdge(oDotF, element);		
-					}
-				});
+			fieldEdges[number] = ret = entries.toArray(new FieldEdges[entries.size()]);
 		}
+		return ret;
+	}
+
+	private static Var_Node[] toArray(EdgeStore<FieldRef_Node>.Targets targets) {
+		final Var_Node[] ret = new Var_Node[targets.size()];
+		int i = 0;
+		for (Var_Node v : targets)
+			ret[i++] = v;
+		return ret;
 	}
 
-	private void updateCallGraph(Var_Node src) {
+	private void dropFieldEdges(Var_Node base) {
+		if (base.getNumber() < fieldEdges.length)
+			fieldEdges[base.getNumber()] = null;
+	}
+
+	protected void updateCallGraph(Var_Node src, final PTSetInternal newP2Set) {
 		final QueueReader<VirtualInvokeSite> addedSites = cgb.edgeReader();
-		final PTSetInternal newP2Set = src.getP2Set().getNewSet();
-		Collection<VirtualInvokeSite> sites = cgb.callSitesLookUp(src);
-		for (VirtualInvokeSite site : sites)
-			cgb.updateCallGraph(newP2Set, site);
+		for (Var_Node member : members(src))
+			for (VirtualInvokeSite site : cgb.callSitesLookUp(member))
+				cgb.updateCallGraph(newP2Set, site);
 		
 		if(PTAOptions.staticcontext == PTAOptions.THIS && pta instanceof ContextSensPTA){
 			SCGBuilder scgb = (SCGBuilder) cgb;
 			final QueueReader<Pair<MethodOrMethodContext, Unit>> addedStaticSites = ((SCGBuilder) cgb).staticEdgeReader();
-			Collection<Pair<MethodOrMethodContext, Unit>> staticSites = ((SCGBuilder) cgb).staticCallSitesLookUp(src);
-			for (Pair<MethodOrMethodContext, Unit> site : staticSites)
-				scgb.updateCallGraph(newP2Set, site);
+			for (Var_Node member : members(src))
+				for (Pair<MethodOrMethodContext, Unit> site : scgb.staticCallSitesLookUp(member))
+					scgb.updateCallGraph(newP2Set, site);
 			
 			pta.build();
 			
 			while(addedSites.hasNext()||addedStaticSites.hasNext()){ // This part is not needed if context is not adptive at var level(e.g. eagle)
-				while(addedSites.hasNext()){
-					final VirtualInvokeSite site = addedSites.next();
-					final Var_Node receiver = site.recNode();
-					cgb.updateCallGraph(receiver.getP2Set().getOldSet(), site);
-					if(receiver==src)
-						cgb.updateCallGraph(receiver.getP2Set().getNewSet(), site);
-				}
+				while(addedSites.hasNext())
+					updateNewSite(addedSites.next(), src, newP2Set);
 				while(addedStaticSites.hasNext()){
 					final Pair<MethodOrMethodContext, Unit> site = addedStaticSites.next();
 					MethodOrMethodContext caller = site.getO1();
 					GNode thisRef = pta.getMethodPAG(caller.method()).nodeFactory().caseThis();
 					final Var_Node receiver = (Var_Node) ((ContextSensPTA)pta).parameterize(thisRef, caller.context());
-					scgb.updateCallGraph(receiver.getP2Set().getOldSet(), site);
-					if(receiver==src)
-						scgb.updateCallGraph(receiver.getP2Set().getNewSet(), site);
+					scgb.updateCallGraph(receivedSoFar(receiver), site);
+					if(receiver.getReplacement()==src)
+						scgb.updateCallGraph(newP2Set, site);
 				}
 				pta.build();
 			}
 			
+		}else if(PTAOptions.batchCallGraph){
+			build();
+			
+			while(addedSites.hasNext()){
+				int sites = 0;
+				while(addedSites.hasNext()){
+					updateNewSite(addedSites.next(), src, newP2Set);
+					sites++;
+				}
+				build();
+				savedBuildRounds += sites - 1;
+			}
 		}else{
 			pta.build();
 			
 			while(addedSites.hasNext()){
-				final VirtualInvokeSite site = addedSites.next();
-				final Var_Node receiver = site.recNode();
-				cgb.updateCallGraph(receiver.getP2Set().getOldSet(), site);
-				if(receiver==src)
-					cgb.updateCallGraph(receiver.getP2Set().getNewSet(), site);
+				updateNewSite(addedSites.next(), src, newP2Set);
 				
 				pta.build();
 			}
 		}
 	}
 
-	private void handleAddedComplexEdges(QueueReader<Pair<Var_Node, FieldRef_Node>> addedStoreEdges,
-			QueueReader<Pair<FieldRef_Node, Var_Node>> addedLoadEdges) {
+	private void build() {
+		buildRounds++;
+		pta.build();
+	}
+
+	/** Dispatches a newly recorded call site on everything its receiver points to so far. */
+	protected void updateNewSite(VirtualInvokeSite site, Var_Node src, PTSetInternal newP2Set) {
+		final Var_Node receiver = site.recNode();
+		cgb.updateCallGraph(receivedSoFar(receiver), site);
+		if(receiver.getReplacement()==src)
+			cgb.updateCallGraph(newP2Set, site);
+	}
+
+	/** Objects of receiver that have already been propagated from it. */
+	protected PTSetInternal receivedSoFar(Var_Node receiver) {
+		return receiver.getP2Set().getOldSet();
+	}
+
+	protected void handleAddedComplexEdges() {
 		while(addedStoreEdges.hasNext()){
 			Pair<Var_Node, FieldRef_Node> storeEdge = addedStoreEdges.next();
 			final Var_Node srcv = storeEdge.getO1();
 			final FieldRef_Node tgtfrn = storeEdge.getO2();
 			final SparkField fld = tgtfrn.getField();
+			dropFieldEdges(tgtfrn.getBase());
 //			pag.addSimpleEdge(srcv,pta.parameterize(fld,null));//field base
-			tgtfrn.getBase().getP2Set().getOldSet().forall(new PTSetVisitor() {
-				public void visit(GNode n) {
-					Alloc_Node a = (Alloc_Node) n;
-					if(isConstant(a))
-						return; //	cannot modify a const!
-					final Var_Node oDotF = pta.parameterize(fld, a);
-					pag.addSimpleEdge(srcv, oDotF);
-				}
+			tgtfrn.getBase().getP2Set().getOldSet().forEachNumber(number -> {
+				Alloc_Node a = allocNodes.get(number);
+				if(isConstant(a))
+					return; //	cannot modify a const!
+				final Var_Node oDotF = pta.parameterize(fld, a);
+				pag.addSimpleEdge(srcv, oDotF);
 			});
 		}		
 		while(addedLoadEdges.hasNext()){
@@ -218,49 +349,59 @@ public final class Solver extends Propagator {
 			final FieldRef_Node srcfrn = loadEdge.getO1();
 			final Var_Node tgtv = loadEdge.getO2();
 			final SparkField fld = srcfrn.getField();
+			dropFieldEdges(srcfrn.getBase());
 //			pag.addSimpleEdge(pta.parameterize(fld,null), tgtv);//field base
-			srcfrn.getBase().getP2Set().getOldSet().forall(new PTSetVisitor() {
-				public void visit(GNode n) {
-					final Var_Node oDotF = pta.parameterize(fld, (Alloc_Node) n);
-					pag.addSimpleEdge(oDotF, tgtv);
-				}
+			srcfrn.getBase().getP2Set().getOldSet().forEachNumber(number -> {
+				final Var_Node oDotF = pta.parameterize(fld, allocNodes.get(number));
+				pag.addSimpleEdge(oDotF, tgtv);
 			});
 		}
 	}
 	
-	private boolean isConstant(Alloc_Node a) {
+	protected boolean isConstant(Alloc_Node a) {
 		if(a instanceof ContextAlloc_Node)
 			a = ((ContextAlloc_Node) a).base();
 		return a instanceof Constant_Node;
 	}
 
-	private void handleAddedSimpleEdges(QueueReader<Pair<Alloc_Node, Var_Node>> addedAllocEdges,
-			QueueReader<Pair<Var_Node, Var_Node>> addedSimpleEdges) {
+	protected void handleAddedSimpleEdges() {
 		while(addedAllocEdges.hasNext()){
 			Pair<Alloc_Node, Var_Node> allocEdge = addedAllocEdges.next();
 			Alloc_Node src = allocEdge.getO1();
-			Var_Node tgt = allocEdge.getO2();
+			Var_Node tgt = (Var_Node) allocEdge.getO2().getReplacement();
 			if (tgt.makeP2Set().add(src))
 				varNodeWorkList.add(tgt);
 		}
 		while(addedSimpleEdges.hasNext()){
 			Pair<Var_Node, Var_Node> simpleEdge = addedSimpleEdges.next();
 			final Var_Node srcv = simpleEdge.getO1();
-			final Var_Node tgtv = simpleEdge.getO2();
-			if (addAll(tgtv, srcv.getP2Set().getOldSet()))
+			final Var_Node tgtv = (Var_Node) simpleEdge.getO2().getReplacement();
+			if (addAll(tgtv, srcv.getP2Set().getOldSet(), pag.simpleEdgeFilter(srcv, simpleEdge.getO2())))
 				varNodeWorkList.add(tgtv);
 		}
 	}
 
-	private boolean addAll(final Var_Node pointer, PTSetInternal other) {
-		final PTSetInternal addTo = pointer.makeP2Set();
-		// deprecated because not equal to forall->add
-		// return addTo.addAll(other, null);
-		return other.forall(new PTSetVisitor() {
-			public final void visit(GNode n) {
-				if (addTo.add(n))
-					returnValue = true;
-			}
-		});
+	protected boolean addAll(final Var_Node pointer, PTSetInternal other) {
+		// not addAll(other, null), whose type masks are not equal to forall->add
+		return pointer.makeP2Set().addEach(other, null);
+	}
+
+	/**
+	 * Propagates other along a simple edge into pointer, using the type filter
+	 * the PAG has classified the edge with.
+	 */
+	protected boolean addAll(final Var_Node pointer, PTSetInternal other, int filter) {
+		switch (filter) {
+		case PAG.FILTER_NONE:
+			return pointer.makeP2Set().addEachUnfiltered(other, null);
+		case PAG.FILTER_EMPTY:
+			boolean ret = false;
+			for (Alloc_Node untyped : pag.getUntypedAllocNodes())
+				if (other.contains(untyped) && pointer.makeP2Set().add(untyped))
+					ret = true;
+			return ret;
+		default:
+			return addAll(pointer, other);
+		}
 	}
 }
@@ -19,33 +19,34 @@
 
 package pta.solver;
 
-import soot.Type;
+import soot.util.BitVector;
 import util.TypeMask;
 
 import java.util.*;
 
+import pag.EdgeStore;
 import pag.PAG;
 import pag.node.var.Var_Node;
 
 /**
  * Performs a pseudo-topological sort on the VarNodes in a PAG.
  * 
+ * The strongly connected components of the simple edges are found with an
+ * iterative version of Tarjan's algorithm, so deep PAGs need no big thread
+ * stack. Finishing numbers are handed out component by component as the
+ * components are completed, which orders the condensed graph topologically:
+ * the solver, polling the highest number first, visits sources before the
+ * nodes they flow into, and the nodes of a cycle one after the other.
+ * 
  * @author Ondrej Lhotak
  */
 
 public class TopoSorter {
 	/** Actually perform the topological sort on the PAG. */
 	public void sort() {
-		if (ignoreTypes)
-			for (Var_Node v : pag.getVarNodeNumberer())
-				dfsVisitIgnoreType(v);
-		else
-			for (Var_Node v : pag.getVarNodeNumberer())
-				dfsVisit(v);
-
-		for (Var_Node v : pag.getVarNodeNumberer()) {
-			dfsVisit(v);
-		}
+		for (Var_Node v : pag.getVarNodeNumberer())
+			if (!visited.get(v.getNumber()))
+				visit(v);
 		visited = null;
 	}
 
@@ -54,39 +55,74 @@ public class TopoSorter {
 		this.simple = pag.getSimple();
 		this.ignoreTypes = ignoreTypes;
 		this.typeManager = pag.getTypeManager();
-		this.visited = new HashSet<Var_Node>();
+		int size = pag.getVarNodeNumberer().size() + 1;
+		this.visited = new BitVector(size);
+		this.onStack = new BitVector(size);
+		this.lowlink = new int[size];
+		this.index = new int[size];
 	}
 	/* End of public methods. */
 
 	protected boolean ignoreTypes;
 	protected PAG pag;
-	protected Map<Var_Node, Set<Var_Node>> simple;
+	protected EdgeStore<Var_Node> simple;
 	protected TypeMask typeManager;
 	protected int nextFinishNumber = 1;
-	protected HashSet<Var_Node> visited;
+	protected BitVector visited;
+	/* Tarjan state, indexed by node number */
+	private final BitVector onStack;
+	private final int[] lowlink;
+	private final int[] index;
+	private int nextIndex = 1;
+	private final ArrayList<Var_Node> sccStack = new ArrayList<>();
+	private final ArrayList<Var_Node> callStack = new ArrayList<>();
+	private final ArrayList<Iterator<Var_Node>> iterStack = new ArrayList<>();
 
-	protected void dfsVisit(Var_Node n) {
-		if (visited.contains(n))
-			return;
-		visited.add(n);
-		Set<Var_Node> elements = simple.get(n);
-		if (elements != null) {
-			Type nType = n.getType();
-			for (Var_Node element : elements)
-				if (typeManager.castNeverFails(nType, element.getType()))
-					dfsVisit(element);
+	/** Runs Tarjan's algorithm from root without recursion. */
+	protected void visit(Var_Node root) {
+		push(root);
+		while (!callStack.isEmpty()) {
+			final int top = callStack.size() - 1;
+			final Var_Node n = callStack.get(top);
+			final Iterator<Var_Node> it = iterStack.get(top);
+			if (it.hasNext()) {
+				final Var_Node element = it.next();
+				if (!ignoreTypes && !typeManager.castNeverFails(n.getType(), element.getType()))
+					continue;
+				final int num = element.getNumber();
+				if (!visited.get(num))
+					push(element);
+				else if (onStack.get(num) && index[num] < lowlink[n.getNumber()])
+					lowlink[n.getNumber()] = index[num];
+				continue;
+			}
+			callStack.remove(top);
+			iterStack.remove(top);
+			final int num = n.getNumber();
+			if (top > 0) {
+				final int parent = callStack.get(top - 1).getNumber();
+				if (lowlink[num] < lowlink[parent])
+					lowlink[parent] = lowlink[num];
+			}
+			if (lowlink[num] == index[num]) {
+				// n is the root of a component: number all its nodes
+				Var_Node member;
+				do {
+					member = sccStack.remove(sccStack.size() - 1);
+					onStack.clear(member.getNumber());
+					member.setFinishingNumber(nextFinishNumber++);
+				} while (member != n);
+			}
 		}
-		n.setFinishingNumber(nextFinishNumber++);
 	}
 
-	protected void dfsVisitIgnoreType(Var_Node n) {
-		if (visited.contains(n))
-			return;
-		visited.add(n);
-		Set<Var_Node> elements = simple.get(n);
-		if (elements != null)
-			for (Var_Node element : elements)
-				dfsVisitIgnoreType(element);
-		n.setFinishingNumber(nextFinishNumber++);
+	private void push(Var_Node n) {
+		final int num = n.getNumber();
+		visited.set(num);
+		index[num] = lowlink[num] = nextIndex++;
+		onStack.set(num);
+		sccStack.add(n);
+		callStack.add(n);
+		iterStack.add(simple.lookup(n).iterator());
 	}
 }
@@ -13,6 +13,20 @@ import soot.SootClass;
 import soot.Type;
 
 public class FastHierarchy extends soot.FastHierarchy{
+	/*
+	 * soot fills its interface caches lazily; guard them so that type checks
+	 * may run on the worker threads of the parallel solver.
+	 */
+	@Override
+	public synchronized Set<SootClass> getAllImplementersOfInterface(SootClass parent) {
+		return super.getAllImplementersOfInterface(parent);
+	}
+
+	@Override
+	public synchronized Set<SootClass> getAllSubinterfaces(SootClass parent) {
+		return super.getAllSubinterfaces(parent);
+	}
+
 	@Override
 	public boolean canStoreType(Type child, Type parent) {
 		if (child.equals(parent)) {
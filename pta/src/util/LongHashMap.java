@@ -0,0 +1,123 @@
+/* Java and Android Analysis Framework
+ * Copyright (C) 2017 Jingbo Lu and Yulei Sui
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive longs to objects, used where a map
+ * keyed by packed pairs of numbers would otherwise need a nested map or box
+ * every key. Null values are not supported.
+ */
+public final class LongHashMap<V> {
+	private static final int MIN_CAPACITY = 16;
+	/** 0 marks a free slot, the value of key 0 itself is kept in zeroValue */
+	private long[] keys;
+	private Object[] values;
+	private Object zeroValue = null;
+	private int size = 0;
+
+	public LongHashMap() {
+		this(MIN_CAPACITY);
+	}
+
+	public LongHashMap(int expected) {
+		int cap = MIN_CAPACITY;
+		while (cap * 3 / 4 < expected)
+			cap <<= 1;
+		keys = new long[cap];
+		values = new Object[cap];
+	}
+
+	/** Returns the value of key, or null if there is none. */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		if (key == 0)
+			return (V) zeroValue;
+		final int mask = keys.length - 1;
+		int i = LongHashSet.mix(key) & mask;
+		for (long k; (k = keys[i]) != 0; i = (i + 1) & mask)
+			if (k == key)
+				return (V) values[i];
+		return null;
+	}
+
+	/** Maps key to value, returns the previous value of key or null. */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null)
+			throw new RuntimeException("null values are not supported");
+		if (key == 0) {
+			final Object old = zeroValue;
+			if (old == null)
+				size++;
+			zeroValue = value;
+			return (V) old;
+		}
+		final int mask = keys.length - 1;
+		int i = LongHashSet.mix(key) & mask;
+		for (long k; (k = keys[i]) != 0; i = (i + 1) & mask)
+			if (k == key) {
+				final Object old = values[i];
+				values[i] = value;
+				return (V) old;
+			}
+		keys[i] = key;
+		values[i] = value;
+		if (++size > keys.length * 3 / 4)
+			rehash(keys.length << 1);
+		return null;
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(values, null);
+		zeroValue = null;
+		size = 0;
+	}
+
+	private void rehash(int capacity) {
+		final long[] oldKeys = keys;
+		final Object[] oldValues = values;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		final int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++)
+			if (oldKeys[j] != 0) {
+				int i = LongHashSet.mix(oldKeys[j]) & mask;
+				while (keys[i] != 0)
+					i = (i + 1) & mask;
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+	}
+}
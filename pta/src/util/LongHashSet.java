@@ -0,0 +1,110 @@
+/* Java and Android Analysis Framework
+ * Copyright (C) 2017 Jingbo Lu and Yulei Sui
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash set of primitive longs, used where a set of packed
+ * pairs of node numbers would otherwise box every pair.
+ */
+public final class LongHashSet {
+	private static final int MIN_CAPACITY = 16;
+	/** 0 marks a free slot, the key 0 itself is kept in hasZero */
+	private long[] table;
+	private boolean hasZero = false;
+	private int size = 0;
+
+	public LongHashSet() {
+		this(MIN_CAPACITY);
+	}
+
+	public LongHashSet(int expected) {
+		int cap = MIN_CAPACITY;
+		while (cap * 3 / 4 < expected)
+			cap <<= 1;
+		table = new long[cap];
+	}
+
+	static int mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	/** Adds key, returns true if it was not in the set yet. */
+	public boolean add(long key) {
+		if (key == 0) {
+			if (hasZero)
+				return false;
+			hasZero = true;
+			size++;
+			return true;
+		}
+		final int mask = table.length - 1;
+		int i = mix(key) & mask;
+		for (long k; (k = table[i]) != 0; i = (i + 1) & mask)
+			if (k == key)
+				return false;
+		table[i] = key;
+		if (++size > table.length * 3 / 4)
+			rehash(table.length << 1);
+		return true;
+	}
+
+	public boolean contains(long key) {
+		if (key == 0)
+			return hasZero;
+		final int mask = table.length - 1;
+		int i = mix(key) & mask;
+		for (long k; (k = table[i]) != 0; i = (i + 1) & mask)
+			if (k == key)
+				return true;
+		return false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(table, 0);
+		hasZero = false;
+		size = 0;
+	}
+
+	private void rehash(int capacity) {
+		final long[] old = table;
+		table = new long[capacity];
+		final int mask = capacity - 1;
+		for (long key : old)
+			if (key != 0) {
+				int i = mix(key) & mask;
+				while (table[i] != 0)
+					i = (i + 1) & mask;
+				table[i] = key;
+			}
+	}
+}
@@ -27,7 +27,6 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -35,6 +34,7 @@ import driver.Config;
 import driver.FakeMainFactory;
 import driver.PTAOptions;
 import pag.MethodPAG;
+import pag.EdgeStore;
 import pag.PAG;
 import pag.node.GNode;
 import pag.node.alloc.Alloc_Node;
@@ -515,7 +515,7 @@ public class PTAEvaluator {
 
 	protected void allocNodeProcessing() {
 		addLine(makeUp("#Alloc Node(CI): ") + pag.getAllocNodes().size());
-		addLine(makeUp("#Alloc Node(CS): ") + pag.getAlloc().keySet().size());
+		addLine(makeUp("#Alloc Node(CS): ") + pag.getAlloc().sourceCount());
 	}
 	
 	Map<LocalVar_Node,Set<LocalVar_Node>> assignMap = new HashMap<>();
@@ -629,34 +629,35 @@ public class PTAEvaluator {
 	
 	protected void asmtProcessing() {
 		int a = 0, sp = 0, ov = 0, vo = 0, st = 0, l = 0, tst = 0, tl = 0;
-		for (Set<Var_Node> s : pag.getAlloc().values())
-			a += s.size();
-		for (Entry<Var_Node, Set<Var_Node>> e : pag.getSimple().entrySet()) {
-			Set<Var_Node> tagets = e.getValue();
+		a = pag.getAlloc().size();
+		for (Var_Node src : pag.getSimple().sources()) {
+			EdgeStore<Var_Node>.Targets tagets = pag.simpleLookup(src);
 			int nt = tagets.size();
 			sp += nt;
-			if (e.getKey() instanceof AllocDotField_Node)
+			if (src instanceof AllocDotField_Node)
 				ov += nt;
 			else
 				for (Var_Node v : tagets)
 					if (v instanceof AllocDotField_Node)
 						vo++;
 		}
-		for (Entry<FieldRef_Node, Set<Var_Node>> s : pag.getStoreInv().entrySet()){
-			st += s.getValue().size();
-			Var_Node v = s.getKey().getBase();
+		for (FieldRef_Node fr : pag.getStoreInv().sources()){
+			int n = pag.storeInvLookup(fr).size();
+			st += n;
+			Var_Node v = fr.getBase();
 			if(v instanceof ContextVar_Node)
 				v=((ContextVar_Node) v).base();
 			if(v instanceof LocalVar_Node&& ((LocalVar_Node) v).isThis())
-				tst+=s.getValue().size();
+				tst+=n;
 		}
-		for (Entry<FieldRef_Node, Set<Var_Node>> s : pag.getLoad().entrySet()){
-			l += s.getValue().size();
-			Var_Node v = s.getKey().getBase();
+		for (FieldRef_Node fr : pag.getLoad().sources()){
+			int n = pag.loadLookup(fr).size();
+			l += n;
+			Var_Node v = fr.getBase();
 			if(v instanceof ContextVar_Node)
 				v=((ContextVar_Node) v).base();
 			if(v instanceof LocalVar_Node&& ((LocalVar_Node) v).isThis())
-				tl+=s.getValue().size();
+				tl+=n;
 		}
 
 		addLine(makeUp("#Alloc-pag-edge:") + a);
@@ -695,7 +696,7 @@ public class PTAEvaluator {
 		return false;
 	}
 
-	private void addLine(String str, Object data) {
+	public void addLine(String str, Object data) {
 		if(!str.endsWith(":"))
 			str+=':';
 		addLine(makeUp(str)+data);
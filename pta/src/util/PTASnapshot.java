@@ -0,0 +1,124 @@
+/* Java and Android Analysis Framework
+ * Copyright (C) 2017 Jingbo Lu and Yulei Sui
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import pag.node.GNode;
+import pag.node.alloc.Alloc_Node;
+import pag.node.var.AllocDotField_Node;
+import pag.node.var.ContextVar_Node;
+import pag.node.var.Var_Node;
+import pta.PTA;
+import pta.pts.PTSetVisitor;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.toolkits.scalar.Pair;
+
+/**
+ * Solver-independent summary of a finished PTA run, used to check that two
+ * runs of the same analysis computed the same result. Points-to sets are
+ * projected to variables and allocation sites, so that runs with different
+ * PAGs can be compared; context-sensitive results are compared by their
+ * sizes.
+ */
+public class PTASnapshot {
+	private static final int MAXDIFFS = 20;
+
+	private final Map<Object, Set<Object>> pointsTo = new HashMap<>();
+	private final Set<List<Object>> callEdges = new HashSet<>();
+	private int varNodes = 0;
+	private long pointsToRelation = 0;
+	private int csCallEdges = 0;
+
+	public PTASnapshot(PTA pta) {
+		for (Var_Node vn : pta.getPag().getVarNodeNumberer()) {
+			varNodes++;
+			final Object key = project(vn);
+			final Set<Object> pts = pointsTo.computeIfAbsent(key, k -> new HashSet<>());
+			vn.getP2Set().forall(new PTSetVisitor() {
+				public final void visit(GNode n) {
+					pointsToRelation++;
+					pts.add(((Alloc_Node) n).getNewExpr());
+				}
+			});
+		}
+		pointsTo.values().removeIf(Set::isEmpty);
+		for (Edge e : pta.getCallGraph()) {
+			csCallEdges++;
+			callEdges.add(Arrays.asList(e.src(), e.srcUnit(), e.tgt(), e.kind()));
+		}
+	}
+
+	private static Object project(Var_Node vn) {
+		if (vn instanceof ContextVar_Node)
+			return project(((ContextVar_Node) vn).base());
+		if (vn instanceof AllocDotField_Node) {
+			AllocDotField_Node adf = (AllocDotField_Node) vn;
+			return new Pair<Object, Object>(adf.getBase().getNewExpr(), adf.getField());
+		}
+		return vn.getVariable();
+	}
+
+	/** Returns a description of every difference between this and other. */
+	public List<String> diff(PTASnapshot other) {
+		List<String> ret = new ArrayList<>();
+		if (varNodes != other.varNodes)
+			ret.add("#Var nodes: " + varNodes + " vs " + other.varNodes);
+		if (pointsToRelation != other.pointsToRelation)
+			ret.add("#Points-to relation: " + pointsToRelation + " vs " + other.pointsToRelation);
+		if (csCallEdges != other.csCallEdges)
+			ret.add("#Call Edge(CS): " + csCallEdges + " vs " + other.csCallEdges);
+
+		Set<Object> vars = new HashSet<>(pointsTo.keySet());
+		vars.addAll(other.pointsTo.keySet());
+		int pointers = 0;
+		for (Object var : vars) {
+			Set<Object> mine = pointsTo.getOrDefault(var, new HashSet<>());
+			Set<Object> theirs = other.pointsTo.getOrDefault(var, new HashSet<>());
+			if (!mine.equals(theirs) && pointers++ < MAXDIFFS)
+				ret.add("pts(" + var + "): " + onlyIn(mine, theirs) + " vs " + onlyIn(theirs, mine));
+		}
+		if (pointers > MAXDIFFS)
+			ret.add("... " + (pointers - MAXDIFFS) + " more pointers differ");
+
+		int edges = 0;
+		for (List<Object> e : callEdges)
+			if (!other.callEdges.contains(e) && edges++ < MAXDIFFS)
+				ret.add("call edge only in first run: " + e);
+		for (List<Object> e : other.callEdges)
+			if (!callEdges.contains(e) && edges++ < MAXDIFFS)
+				ret.add("call edge only in second run: " + e);
+		if (edges > MAXDIFFS)
+			ret.add("... " + (edges - MAXDIFFS) + " more call edges differ");
+		return ret;
+	}
+
+	private static Set<Object> onlyIn(Set<Object> a, Set<Object> b) {
+		Set<Object> ret = new HashSet<>(a);
+		ret.removeAll(b);
+		return ret;
+	}
+}
@@ -27,12 +27,12 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.function.Consumer;
 
 import driver.Config;
+import pag.EdgeStore;
 import pag.PAG;
 import pag.node.GNode;
 import pag.node.alloc.Alloc_Node;
@@ -46,7 +46,6 @@ import pta.ContextSensPTA;
 import pta.PTA;
 import pta.pts.PTSetInternal;
 import pta.pts.PTSetVisitor;
-import soot.Context;
 import soot.Local;
 import soot.MethodOrMethodContext;
 import soot.SootClass;
@@ -82,10 +81,7 @@ public final class PTAUtils {
 			if (!Config.v().isAppClass(varNode.getMethod().getDeclaringClass()))
 				continue;
 			if (pta instanceof ContextSensPTA) {
-				Map<Context, ContextVar_Node> cvns = ((ContextSensPTA) pta).getContextVarNodeMap().get(varNode);
-				if (cvns == null)
-					continue;
-				cvns.values().forEach(new Consumer<ContextVar_Node>() {
+				((ContextSensPTA) pta).getContextVarNodes(varNode).forEach(new Consumer<ContextVar_Node>() {
 					public void accept(ContextVar_Node cvn) {
 						System.out.println(cvn + ":");
 						printPts(cvn.getP2Set());
@@ -253,23 +249,23 @@ public final class PTAUtils {
 		PAGMapDrawer(DotGraph canvas){
 			this.canvas=canvas;
 		}
-		private void drawPAGMap(Map<?extends GNode, ?extends Set<?extends GNode>> map, String color){
-			map.forEach((n,elements)->{
+		private <N extends GNode> void drawPAGMap(EdgeStore<N> map, String color){
+			for (N n : map.sources()) {
 				drawNode(canvas, n);
-				elements.forEach(element->{
+				map.lookup(n).forEach(element->{
 					drawNode(canvas, element);
 					drawEdge(canvas, n, element, color);
 				});
-			});
+			}
 		}
-		private void drawInvPAGMap(Map<?extends GNode, ?extends Set<?extends GNode>> map, String color){
-			map.forEach((n,elements)->{
+		private <N extends GNode> void drawInvPAGMap(EdgeStore<N> map, String color){
+			for (N n : map.sources()) {
 				drawNode(canvas, n);
-				elements.forEach(element->{
+				map.lookup(n).forEach(element->{
 					drawNode(canvas, element);
 					drawEdge(canvas, element, n, color);
 				});
-			});
+			}
 		}
 	}
 	/**
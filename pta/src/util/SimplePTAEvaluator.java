@@ -24,7 +24,6 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -327,15 +326,9 @@ public class SimplePTAEvaluator extends PTAEvaluator{
 	@Override
 	protected void asmtProcessing() {
 		int sp = 0, st = 0, l = 0;
-		for (Entry<Var_Node, Set<Var_Node>> s : pag.getSimple().entrySet()) {
-			sp += s.getValue().size();
-		}
-		for (Entry<FieldRef_Node, Set<Var_Node>> s : pag.getStoreInv().entrySet()){
-			st += s.getValue().size();
-		}
-		for (Entry<FieldRef_Node, Set<Var_Node>> s : pag.getLoad().entrySet()){
-			l += s.getValue().size();
-		}
+		sp = pag.getSimple().size();
+		st = pag.getStoreInv().size();
+		l = pag.getLoad().size();
 		
 		addLine(makeUp("#Simple-pag-edge:") + sp);
 		addLine(makeUp("#Store-pag-edge:") + st);
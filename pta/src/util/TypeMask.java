@@ -116,6 +116,7 @@ public final class TypeMask {
 	final public void makeTypeMask() {
 		RefType.v("java.lang.Class");
 		typeMask = new LargeNumberedMap<Type, BitVector>(Scene.v().getTypeNumberer());
+		maskedAllocs = pag.getAllocNodeNumberer().size();
 		if (fh == null)
 			return;
 
@@ -167,6 +168,21 @@ public final class TypeMask {
 	}
 
 	private LargeNumberedMap<Type, BitVector> typeMask = null;
+	/** alloc nodes numbered up to this were present when the masks were made */
+	private int maskedAllocs = 0;
+
+	/**
+	 * Returns true if the type masks know about the alloc node with the given
+	 * number, i.e. if it had been created when they were made.
+	 */
+	final public boolean isMasked(int allocNumber) {
+		return allocNumber <= maskedAllocs;
+	}
+
+	/** Returns the number of the first alloc node the type masks do not know about. */
+	final public int firstUnmasked() {
+		return maskedAllocs + 1;
+	}
 
 	final public boolean castNeverFails(Type src, Type dst) {
 		if (fh == null)
@@ -190,6 +206,36 @@ public final class TypeMask {
 		return fh.canStoreType(src, dst);
 	}
 
+	/**
+	 * Returns true if no object stored in a pointer of type src can be stored
+	 * in a pointer of type dst, except for objects of unknown type (AnySubType
+	 * or NullType), which pass every cast. This is only decided for two
+	 * classes, neither of them an interface: classes form a tree, so the
+	 * type of an object storable in both is a subclass of both, and one of
+	 * the two classes must then be a subclass of the other.
+	 */
+	final public boolean castAlwaysFails(Type src, Type dst) {
+		if (fh == null || !(src instanceof RefType) || !(dst instanceof RefType))
+			return false;
+		final RefType s = (RefType) src, d = (RefType) dst;
+		if (!s.hasSootClass() || !d.hasSootClass())
+			return false;
+		final SootClass sc = s.getSootClass(), dc = d.getSootClass();
+		if (sc.isInterface() || dc.isInterface() || sc.isPhantom() || dc.isPhantom())
+			return false;
+		return !fh.canStoreType(src, dst) && !fh.canStoreType(dst, src);
+	}
+
+	/**
+	 * castNeverFails for the type of the alloc node with the given number; the
+	 * node is only looked up if dst does not accept everything.
+	 */
+	final public boolean castNeverFails(int allocNumber, Type dst) {
+		if (fh == null || dst == null)
+			return true;
+		return castNeverFails(pag.getAllocNodeNumberer().get(allocNumber).getType(), dst);
+	}
+
 	public void setFastHierarchy(FastHierarchy fh) {
 		this.fh = fh;
 	}